@@ -0,0 +1,81 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over 64-bit fingerprints. The number of bits and of
+ * hash functions are derived from the expected number of entries and the wanted
+ * false-positive rate; at 1% it takes about 1.2 bytes per entry.
+ */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(AtomicLongArray bits, int hashCount) {
+        this.bits = bits;
+        this.bitCount = bits.length() * 64L;
+        this.hashCount = hashCount;
+    }
+
+    public BloomFilter(long expected, double falsePositiveRate) {
+        if (expected < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("bad Bloom filter parameters");
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long words = (m + 63) / 64;
+        if (words > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Bloom filter too large");
+        bits = new AtomicLongArray((int) words);
+        bitCount = words * 64;
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * ln2));
+    }
+
+    /** Sets the bits of the fingerprint; returns <code>true</code> if at least one of them was clear. */
+    public boolean put(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = URLFingerprint.mix(fingerprint) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = bits.get(word);
+            while ((old & mask) == 0) {
+                if (bits.compareAndSet(word, old, old | mask)) {
+                    changed = true;
+                    break;
+                }
+                old = bits.get(word);
+            }
+        }
+        return changed;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(bits.length());
+        out.writeInt(hashCount);
+        for (int i = 0; i < bits.length(); i++)
+            out.writeLong(bits.get(i));
+    }
+
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        AtomicLongArray bits = new AtomicLongArray(in.readInt());
+        int hashCount = in.readInt();
+        for (int i = 0; i < bits.length(); i++)
+            bits.set(i, in.readLong());
+        return new BloomFilter(bits, hashCount);
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = URLFingerprint.mix(fingerprint) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+}
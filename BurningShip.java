@@ -1,3 +1,4 @@
+package com.company;
 
 import java.awt.geom.Rectangle2D;
 
@@ -17,19 +18,43 @@ public class BurningShip extends FractalGenerator {
         range.width = 4;
     }
 
+    /** Escape time; exactly periodic orbits stop early, as in Mandelbrot. */
     @Override
     public int numIterations(double x, double y) {
         int iteraion = 0;
         double x1 = 0;
         double y1 = 0;
+        double savedX = 0;
+        double savedY = 0;
+        int nextSave = 1;
         while (x1*x1 + y1*y1 < 4 && iteraion < MAX_ITERATIONS) {
             double temp1 = x1 * x1 - y1 * y1 + x;
             double temp2 = Math.abs(2 * x1 * y1) + y;
             x1 = temp1;
             y1 = temp2;
             iteraion++;
+            if (x1 == savedX && y1 == savedY) return -1;
+            if (iteraion == nextSave) {
+                savedX = x1;
+                savedY = y1;
+                nextSave <<= 1;
+            }
         }
         if (iteraion >= MAX_ITERATIONS)return -1;
         return iteraion;
     }
+
+    @Override
+    public void numIterations(double[] xs, double y, int[] counts, int from, int to) {
+        if (VECTORIZED)
+            from = VectorKernel.iterate(VectorKernel.BURNING_SHIP, MAX_ITERATIONS, xs, y, counts, from, to);
+        super.numIterations(xs, y, counts, from, to);
+    }
+
+    @Override
+    public void numIterations(double[] xs, double[] ys, int[] counts, int from, int to) {
+        if (VECTORIZED)
+            from = VectorKernel.iterate(VectorKernel.BURNING_SHIP, MAX_ITERATIONS, xs, ys, counts, from, to);
+        super.numIterations(xs, ys, counts, from, to);
+    }
 }
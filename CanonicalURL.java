@@ -0,0 +1,196 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable, normalized absolute http(s) URL, parsed once when the link is found.
+ * Scheme and host are lower-cased, default ports, fragments and user info are
+ * dropped, "." and ".." path segments are resolved and an empty path becomes "/",
+ * so spellings of one address that differ only in these details compare equal
+ * and have the same fingerprint.
+ *
+ * Host names are interned: every URL of a host shares one String and one small
+ * integer id.
+ */
+public final class CanonicalURL {
+    private static final ConcurrentHashMap<String, Host> HOSTS = new ConcurrentHashMap<String, Host>();
+    private static final AtomicInteger NEXT_HOST_ID = new AtomicInteger();
+
+    private static final class Host {
+        final String name;
+        final int id;
+
+        Host(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private final String scheme;
+    private final Host host;
+    private final int port;
+    private final String path;
+    private final String text;
+    private final long fingerprint;
+
+    private CanonicalURL(String scheme, Host host, int port, String path) {
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.text = scheme + "://" + host.name + (port == -1 ? "" : ":" + port) + path;
+        this.fingerprint = URLFingerprint.of(text);
+    }
+
+    /** Parses and normalizes the URL; returns <code>null</code> if it is not an absolute http(s) URL. */
+    public static CanonicalURL parse(String raw) {
+        String url = raw.trim();
+        int colon = url.indexOf("://");
+        if (colon <= 0)
+            return null;
+        String scheme = url.substring(0, colon).toLowerCase();
+        int defaultPort;
+        if (scheme.equals("http"))
+            defaultPort = 80;
+        else if (scheme.equals("https"))
+            defaultPort = 443;
+        else
+            return null;
+
+        int start = colon + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) == -1)
+            end++;
+        String authority = url.substring(start, end);
+        int at = authority.lastIndexOf('@');
+        if (at != -1)
+            authority = authority.substring(at + 1);
+
+        int port = -1;
+        int portColon = authority.lastIndexOf(':');
+        if (portColon != -1 && authority.indexOf(']', portColon) == -1) {
+            String digits = authority.substring(portColon + 1);
+            authority = authority.substring(0, portColon);
+            if (!digits.isEmpty()) {
+                try {
+                    port = Integer.parseInt(digits);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (port < 1 || port > 65535)
+                    return null;
+                if (port == defaultPort)
+                    port = -1;
+            }
+        }
+        String hostName = authority.toLowerCase();
+        if (hostName.endsWith("."))
+            hostName = hostName.substring(0, hostName.length() - 1);
+        if (hostName.isEmpty())
+            return null;
+
+        String rest = url.substring(end);
+        int hash = rest.indexOf('#');
+        if (hash != -1)
+            rest = rest.substring(0, hash);
+        int query = rest.indexOf('?');
+        String path = removeDotSegments(query == -1 ? rest : rest.substring(0, query));
+        if (path.isEmpty())
+            path = "/";
+        if (query != -1)
+            path += rest.substring(query);
+
+        return new CanonicalURL(scheme, intern(hostName), port, path);
+    }
+
+    /** RFC 3986, section 5.2.4. */
+    static String removeDotSegments(String path) {
+        if (path.indexOf('.') == -1)
+            return path;
+        String[] segments = path.split("/", -1);
+        String[] out = new String[segments.length];
+        int n = 0;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (segment.equals(".")) {
+                if (last)
+                    out[n++] = "";
+            } else if (segment.equals("..")) {
+                if (n > 1)
+                    n--;
+                if (last)
+                    out[n++] = "";
+            } else {
+                out[n++] = segment;
+            }
+        }
+        StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                result.append('/');
+            result.append(out[i]);
+        }
+        if (path.startsWith("/") && (result.length() == 0 || result.charAt(0) != '/'))
+            result.insert(0, '/');
+        return result.toString();
+    }
+
+    private static Host intern(String name) {
+        Host host = HOSTS.get(name);
+        if (host == null)
+            host = HOSTS.computeIfAbsent(name, key -> new Host(key, NEXT_HOST_ID.getAndIncrement()));
+        return host;
+    }
+
+    /** Number of distinct hosts seen by this JVM. */
+    public static int hostCount() {
+        return HOSTS.size();
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getHost() {
+        return host.name;
+    }
+
+    public int getHostId() {
+        return host.id;
+    }
+
+    /** Explicit port, or -1 for the default port of the scheme. */
+    public int getPort() {
+        return port;
+    }
+
+    /** Host and explicit port, as sent in the Host header. */
+    public String getAuthority() {
+        return port == -1 ? host.name : host.name + ":" + port;
+    }
+
+    /** Path and query, as sent in the request line. */
+    public String getPath() {
+        return path;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CanonicalURL && ((CanonicalURL) o).fingerprint == fingerprint
+                && ((CanonicalURL) o).text.equals(text);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
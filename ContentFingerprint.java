@@ -0,0 +1,95 @@
+/**
+ * Streaming fingerprint of page text. Feed the page line by line; the text is
+ * split into lower-cased words, which give an exact 64-bit hash (insensitive to
+ * spacing and line breaks) and a 64-bit SimHash of the distinct overlapping word
+ * triples. Pages that differ in a few places have SimHashes that differ in a few
+ * bits. Each triple counts once, so boilerplate repeated all over a page does
+ * not drown the text that tells pages apart.
+ */
+public class ContentFingerprint {
+    private static final int SHINGLE = 3;
+
+    private final int[] weights = new int[64];
+    private final long[] window = new long[SHINGLE];
+    private long[] shingles = new long[256];
+    private int shingleCount;
+    private long exact = 0xcbf29ce484222325L;
+    private int words;
+
+    public void update(String line) {
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean letter = i < line.length() && Character.isLetterOrDigit(line.charAt(i));
+            if (letter && start == -1) {
+                start = i;
+            } else if (!letter && start != -1) {
+                word(line, start, i);
+                start = -1;
+            }
+        }
+    }
+
+    private void word(String line, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(line.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        exact = (exact ^ h) * 0x100000001b3L;
+        exact = URLFingerprint.mix(exact);
+        window[words % SHINGLE] = h;
+        words++;
+        if (words < SHINGLE)
+            return;
+        long shingle = 0;
+        for (int k = 0; k < SHINGLE; k++)
+            shingle = URLFingerprint.mix(shingle ^ window[(words - SHINGLE + k) % SHINGLE]);
+        if (!addShingle(shingle == 0 ? 1 : shingle))
+            return;
+        for (int bit = 0; bit < 64; bit++)
+            weights[bit] += (shingle >>> bit & 1) != 0 ? 1 : -1;
+    }
+
+    private boolean addShingle(long shingle) {
+        if (!insert(shingles, shingle))
+            return false;
+        if (++shingleCount * 2 > shingles.length) {
+            long[] bigger = new long[shingles.length * 2];
+            for (long old : shingles)
+                if (old != 0)
+                    insert(bigger, old);
+            shingles = bigger;
+        }
+        return true;
+    }
+
+    private static boolean insert(long[] table, long value) {
+        int mask = table.length - 1;
+        int i = (int) value & mask;
+        while (table[i] != 0) {
+            if (table[i] == value)
+                return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = value;
+        return true;
+    }
+
+    /** Number of words seen so far. */
+    public int getWords() {
+        return words;
+    }
+
+    public long getExactHash() {
+        long h = URLFingerprint.mix(exact ^ words);
+        return h == 0 ? 1 : h;
+    }
+
+    public long getSimHash() {
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++)
+            if (weights[bit] > 0)
+                simHash |= 1L << bit;
+        return simHash;
+    }
+}
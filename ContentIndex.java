@@ -0,0 +1,59 @@
+import java.util.Arrays;
+
+/**
+ * Fingerprints of the pages processed so far. Exact hashes go to a
+ * FingerprintSet; SimHashes are indexed by four 16-bit bands, so any stored
+ * SimHash within {@link #MAX_DISTANCE} bits of a new one shares at least one
+ * band with it and is found among that band's few candidates.
+ */
+public class ContentIndex {
+    public static final int MAX_DISTANCE = 3;
+    public static final int MIN_WORDS = 50;
+    private static final int BANDS = 4;
+
+    public enum Match { NEW, DUPLICATE, NEAR_DUPLICATE }
+
+    private final FingerprintSet exact;
+    private final long[][] buckets = new long[BANDS << 16][];
+    private final int[] sizes = new int[BANDS << 16];
+
+    public ContentIndex(long expectedPages) {
+        exact = new FingerprintSet(expectedPages);
+    }
+
+    /**
+     * Looks the page up and, if it is new, adds it. Pages shorter than
+     * {@link #MIN_WORDS} words are compared exactly only, since their SimHashes
+     * say little.
+     */
+    public Match add(ContentFingerprint page) {
+        if (!exact.add(page.getExactHash()))
+            return Match.DUPLICATE;
+        if (page.getWords() < MIN_WORDS)
+            return Match.NEW;
+        long simHash = page.getSimHash();
+        synchronized (this) {
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = bucketOf(simHash, band);
+                long[] candidates = buckets[bucket];
+                for (int i = 0; i < sizes[bucket]; i++)
+                    if (Long.bitCount(candidates[i] ^ simHash) <= MAX_DISTANCE)
+                        return Match.NEAR_DUPLICATE;
+            }
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = bucketOf(simHash, band);
+                long[] candidates = buckets[bucket];
+                if (candidates == null)
+                    candidates = buckets[bucket] = new long[4];
+                else if (sizes[bucket] == candidates.length)
+                    candidates = buckets[bucket] = Arrays.copyOf(candidates, candidates.length * 2);
+                candidates[sizes[bucket]++] = simHash;
+            }
+        }
+        return Match.NEW;
+    }
+
+    private static int bucketOf(long simHash, int band) {
+        return band << 16 | (int) (simHash >>> (band * 16)) & 0xffff;
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offline benchmark of the crawler engines. Starts a SyntheticWebServer on the
+ * loopback interface, crawls it from page 0 and reports pages/s and fetch
+ * latency. Needs no network. With <code>validators=DIR</code> the pool engine
+ * keeps a ValidatorStore there, so a second run with the same settings and a
+ * fixed <code>port</code> is a recrawl. With <code>graph=FILE</code> it also
+ * records the link graph, ranks it with PageRank and saves it.
+ *
+ * With <code>engine=distributed</code> the crawl is done by <code>nodes</code>
+ * CrawlNode processes on this machine, <code>threads</code> workers each.
+ *
+ * With <code>spill=DIR</code> the pool engine keeps the links that do not fit
+ * in the frontier on disk there. With <code>checkpoint=FILE</code> it saves
+ * its state every <code>checkpointInterval</code> milliseconds and at the
+ * end, and <code>resume=true</code> goes on from that file instead of the
+ * seed; a resumed crawl needs the same <code>port</code> and, if it had one,
+ * the same spill directory. The distributed nodes take <code>spill</code> too.
+ *
+ * The metrics of a running crawl are published over JMX, and with
+ * <code>report=ms</code> also printed every so many milliseconds.
+ *
+ * Besides the totals, each engine reports the pages fetched in its first
+ * <code>sample</code> milliseconds, which is where a few slow hosts
+ * (<code>slowHosts</code>) holding up the fast ones show. With
+ * <code>minRate=pages/s</code> the benchmark fails, with exit status 1, if
+ * that early rate is lower.
+ *
+ * usage: java CrawlBenchmark [engine=pool|single|both|distributed] [nodes=2] [threads=16] [depth=3]
+ *        [hostDelay=0] [maxPerHost=4] [scorer=breadth|best] [frontier=262144] [validators=DIR] [graph=FILE]
+ *        [spill=DIR] [checkpoint=FILE] [checkpointInterval=10000] [resume=false] [report=0] [sample=10000] [minRate=0] [pages=100000] [hosts=16] [fanOut=10]
+ *        [pageSize=8192] [latency=5] [jitter=5] [slowHosts=2] [slowLatency=200]
+ *        [gzip=true] [errorPercent=0] [mirrorPercent=0] [seed=42] [port=0]
+ */
+public class CrawlBenchmark {
+    String engine = "both";
+    int nodes = 2;
+    int threads = 16;
+    int depth = 3;
+    long hostDelay = 0;
+    int maxPerHost = 4;
+    String scorer = "breadth";
+    int frontier = URLPool.DEFAULT_FRONTIER_CAPACITY;
+    File validators;
+    File graph;
+    File spill;
+    File checkpoint;
+    long checkpointInterval = 10000;
+    boolean resume;
+    long report = 0;
+    long sample = 10000;
+    double minRate = 0;
+    volatile boolean failed;
+    final SyntheticWebServer.Settings web = new SyntheticWebServer.Settings();
+
+    public static void main(String[] args) throws Exception {
+        CrawlBenchmark benchmark = new CrawlBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("usage: java CrawlBenchmark [engine=pool|single|both|distributed] [nodes=N] [threads=N] [depth=N] [hostDelay=ms]"
+                    + " [maxPerHost=N] [scorer=breadth|best] [frontier=N] [validators=dir] [graph=file] [spill=dir] [checkpoint=file] [checkpointInterval=ms] [resume=true|false] [report=ms] [sample=ms] [minRate=pages/s] [pages=N] [hosts=N] [fanOut=N] [pageSize=bytes] [latency=ms] [jitter=ms]"
+                    + " [slowHosts=N] [slowLatency=ms] [gzip=true|false] [errorPercent=N] [mirrorPercent=N] [seed=N] [port=N]");
+            return;
+        }
+        benchmark.run();
+        if (benchmark.failed)
+            System.exit(1);
+    }
+
+    void parse(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq == -1)
+                throw new IllegalArgumentException("bad argument: " + arg);
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "engine": engine = value; break;
+                case "nodes": nodes = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "depth": depth = Integer.parseInt(value); break;
+                case "hostDelay": hostDelay = Long.parseLong(value); break;
+                case "maxPerHost": maxPerHost = Integer.parseInt(value); break;
+                case "scorer": scorer = value; break;
+                case "frontier": frontier = Integer.parseInt(value); break;
+                case "validators": validators = new File(value); break;
+                case "graph": graph = new File(value); break;
+                case "spill": spill = new File(value); break;
+                case "checkpoint": checkpoint = new File(value); break;
+                case "checkpointInterval": checkpointInterval = Long.parseLong(value); break;
+                case "resume": resume = Boolean.parseBoolean(value); break;
+                case "report": report = Long.parseLong(value); break;
+                case "sample": sample = Long.parseLong(value); break;
+                case "minRate": minRate = Double.parseDouble(value); break;
+                case "pages": web.pages = Integer.parseInt(value); break;
+                case "hosts": web.hosts = Integer.parseInt(value); break;
+                case "fanOut": web.fanOut = Integer.parseInt(value); break;
+                case "pageSize": web.pageSize = Integer.parseInt(value); break;
+                case "latency": web.latency = Integer.parseInt(value); break;
+                case "jitter": web.jitter = Integer.parseInt(value); break;
+                case "slowHosts": web.slowHosts = Integer.parseInt(value); break;
+                case "slowLatency": web.slowLatency = Integer.parseInt(value); break;
+                case "gzip": web.gzip = Boolean.parseBoolean(value); break;
+                case "errorPercent": web.errorPercent = Integer.parseInt(value); break;
+                case "mirrorPercent": web.mirrorPercent = Integer.parseInt(value); break;
+                case "seed": web.seed = Long.parseLong(value); break;
+                case "port": web.port = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("unknown argument: " + key);
+            }
+        }
+        if (!engine.equals("pool") && !engine.equals("single") && !engine.equals("both") && !engine.equals("distributed"))
+            throw new IllegalArgumentException("unknown engine: " + engine);
+        if (!scorer.equals("breadth") && !scorer.equals("best"))
+            throw new IllegalArgumentException("unknown scorer: " + scorer);
+        if (resume && checkpoint == null)
+            throw new IllegalArgumentException("resume needs a checkpoint file");
+    }
+
+    void run() throws IOException, InterruptedException {
+        SyntheticWebServer server = new SyntheticWebServer(web);
+        System.out.printf("synthetic web: %d pages on %d hosts, fan-out %d, %d bytes/page, latency %d+%d ms,"
+                        + " %d slow hosts +%d ms, port %d%n", web.pages, web.hosts, web.fanOut, web.pageSize,
+                web.latency, web.jitter, web.slowHosts, web.slowLatency, server.getPort());
+        try {
+            if (engine.equals("distributed"))
+                runDistributed(server);
+            if (engine.equals("pool") || engine.equals("both"))
+                runPool(server);
+            if (engine.equals("single") || engine.equals("both"))
+                runSingle(server);
+        } finally {
+            server.close();
+        }
+    }
+
+    void runPool(SyntheticWebServer server) throws IOException, InterruptedException {
+        URLPool pool = resume ? URLPool.resume(checkpoint, spill, frontier, hostDelay, maxPerHost)
+                : new URLPool(depth, hostDelay, maxPerHost);
+        pool.setFrontier(scorer.equals("best") ? LinkScorer.BEST_FIRST : LinkScorer.BREADTH_FIRST, frontier);
+        if (spill != null && pool.spill == null)
+            pool.setSpill(new FrontierSpill(spill), frontier);
+        if (checkpoint != null)
+            pool.setCheckpoint(new CrawlCheckpoint(checkpoint, checkpointInterval));
+        if (validators != null)
+            pool.setValidators(new ValidatorStore(validators));
+        LinkGraphSink graphSink = graph == null ? null : new LinkGraphSink();
+        if (graphSink != null)
+            pool.setResultSink(graphSink);
+        server.pinHosts(pool.getDnsCache());
+        if (!resume)
+            pool.addPair(new URLDepthPair(server.pageUrl(0), 0));
+        List<Thread> workers = new ArrayList<Thread>();
+        watch(pool.getMetrics(), "pool");
+        Thread sampler = sample(pool.getMetrics(), "pool x" + threads);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(new CrawlerTask(pool), "crawler-" + i);
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers)
+                worker.join();
+        } finally {
+            sampler.interrupt();
+            unwatch(pool.getMetrics());
+        }
+        if (checkpoint != null)
+            pool.saveCheckpoint();
+        if (pool.getValidators() != null)
+            pool.getValidators().close();
+        report("pool x" + threads, pool.getMetrics(), System.nanoTime() - start);
+        if (graphSink != null)
+            rank(graphSink.build());
+    }
+
+    /** Starts the nodes as separate JVMs and waits until all of them are done. */
+    void runDistributed(SyntheticWebServer server) throws IOException, InterruptedException {
+        StringBuilder addresses = new StringBuilder();
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                addresses.append(i == 0 ? "" : ",").append("127.0.0.1:").append(probe.getLocalPort());
+            }
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<Process>();
+        long requests = server.getRequests();
+        long start = System.nanoTime();
+        for (int i = 0; i < nodes; i++) {
+            List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                    "CrawlNode", "id=" + i, "nodes=" + addresses, "seed=" + server.pageUrl(0), "depth=" + depth,
+                    "threads=" + threads, "hostDelay=" + hostDelay, "maxPerHost=" + maxPerHost,
+                    "synthetic=" + web.hosts, "report=" + report));
+            if (spill != null)
+                command.add("spill=" + new File(spill, "node-" + i));
+            processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        for (int i = 0; i < nodes; i++) {
+            if (processes.get(i).waitFor() != 0) {
+                System.out.println("node " + i + " failed");
+                failed = true;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long pages = server.getRequests() - requests;
+        System.out.printf("%-10s %7d pages in %7.2f s  %8.1f pages/s  (%d processes, including JVM start)%n",
+                "dist x" + nodes, pages, seconds, pages / seconds, nodes);
+    }
+
+    void rank(LinkGraph linkGraph) throws IOException {
+        long start = System.nanoTime();
+        PageRank pageRank = new PageRank(linkGraph);
+        double[] rank = pageRank.compute();
+        System.out.printf("pagerank   %7d nodes %8d links  %d iterations in %.3f s%n", linkGraph.nodeCount(),
+                linkGraph.edgeCount(), pageRank.getIterations(), (System.nanoTime() - start) / 1e9);
+        for (int node : PageRank.top(rank, 3))
+            System.out.printf("           %.6f  %s%n", rank[node], linkGraph.url(node));
+        linkGraph.writeTo(graph);
+    }
+
+    void runSingle(SyntheticWebServer server) throws IOException {
+        server.pinHosts(Crawler.dnsCache);
+        watch(Crawler.metrics, "single");
+        Thread sampler = sample(Crawler.metrics, "single");
+        long start = System.nanoTime();
+        try {
+            Crawler.crawl(server.pageUrl(0), depth, ResultSink.NONE);
+        } finally {
+            sampler.interrupt();
+            unwatch(Crawler.metrics);
+        }
+        report("single", Crawler.metrics, System.nanoTime() - start);
+    }
+
+    /** Publishes the metrics over JMX and starts the periodic report if one was asked for. */
+    void watch(CrawlMetrics metrics, String name) {
+        metrics.register(name);
+        if (report > 0)
+            metrics.startReporter(report, System.out);
+    }
+
+    /**
+     * Prints the pages fetched in the first <code>sample</code> milliseconds and
+     * checks the rate against <code>minRate</code>; a crawl that ends sooner
+     * is not sampled.
+     */
+    Thread sample(CrawlMetrics metrics, String engine) {
+        long first = metrics.getPagesFetched();
+        Thread sampler = new Thread(() -> {
+            try {
+                Thread.sleep(sample);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long pages = metrics.getPagesFetched() - first;
+            double rate = pages * 1000.0 / sample;
+            boolean slow = rate < minRate;
+            System.out.printf("%-10s %7d pages in the first %.1f s  %8.1f pages/s%s%n", engine, pages, sample / 1e3,
+                    rate, slow ? "  FAILED: below minRate " + minRate : "");
+            if (slow)
+                failed = true;
+        }, "benchmark-sample");
+        sampler.setDaemon(true);
+        if (sample > 0)
+            sampler.start();
+        return sampler;
+    }
+
+    static void unwatch(CrawlMetrics metrics) {
+        metrics.stopReporter();
+        metrics.unregister();
+    }
+
+    static void report(String engine, CrawlMetrics metrics, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-10s %7d pages in %7.2f s  %8.1f pages/s  %8.1f KB/s  latency p50 %6.1f ms  p99 %6.1f ms"
+                        + "  duplicates %d+%d  not modified %d  errors %s%n", engine, metrics.getPagesFetched(), seconds,
+                metrics.getPagesFetched() / seconds, metrics.getBytesFetched() / seconds / 1024,
+                metrics.getLatencyP50Millis(), metrics.getLatencyP99Millis(), metrics.getDuplicatePages(),
+                metrics.getNearDuplicatePages(), metrics.getNotModifiedPages(), metrics.getErrorCounts());
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodic snapshot of a crawl: the in-memory frontier, the state of the disk
+ * spill and the set of seen URLs. The file is written next to its final place
+ * and renamed, so a crawl killed in the middle of a checkpoint keeps the previous one.
+ * URLs are written as DataStrings, so their length is not limited to 64 KB.
+ */
+public class CrawlCheckpoint {
+    private static final int MAGIC = 0x43524b50;
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final long interval;
+    private long nextAt;
+
+    /** State read back from a checkpoint file. */
+    public static class State {
+        public int maxDepth;
+        public List<URLDepthPair> frontier = new ArrayList<URLDepthPair>();
+        public FrontierSpill spill;
+        public URLSeenFilter seenLink;
+    }
+
+    /** @param interval time in milliseconds between two checkpoints */
+    public CrawlCheckpoint(File file, long interval) {
+        this.file = file;
+        this.interval = interval;
+        this.nextAt = System.currentTimeMillis() + interval;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isDue(long now) {
+        return now >= nextAt;
+    }
+
+    public void save(int maxDepth, List<URLDepthPair> frontier, FrontierSpill spill, URLSeenFilter seenLink)
+            throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(maxDepth);
+            out.writeInt(frontier.size());
+            for (URLDepthPair pair : frontier) {
+                DataStrings.write(out, pair.getURL());
+                out.writeInt(pair.getDepth());
+            }
+            out.writeBoolean(spill != null);
+            if (spill != null)
+                spill.writeState(out);
+            seenLink.writeTo(out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        nextAt = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #save}.
+     * @param spillDir directory of the spill segments, used only if the crawl had a spill
+     */
+    public static State load(File file, File spillDir) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(file + " is not a crawl checkpoint");
+            State state = new State();
+            state.maxDepth = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = DataStrings.read(in);
+                state.frontier.add(new URLDepthPair(url, in.readInt()));
+            }
+            if (in.readBoolean()) {
+                if (spillDir == null)
+                    throw new IOException(file + " needs the directory of its spill");
+                state.spill = FrontierSpill.readState(spillDir, in);
+            }
+            state.seenLink = URLSeenFilter.readFrom(in);
+            return state;
+        }
+    }
+}
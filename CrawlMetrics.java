@@ -0,0 +1,286 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live instrumentation of a crawl. Workers update striped counters
+ * ({@link LongAdder}) and lock-free histograms on the hot path; the numbers
+ * are read through JMX ({@link #register}) or printed by a periodic reporter
+ * ({@link #startReporter}).
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+    public static final int MAX_TRACKED_HOSTS = 1000;
+    public static final int MAX_LEVELS = 64;
+    private static final String OTHER_HOSTS = "(other)";
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder nearDuplicates = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ConcurrentHashMap<String, LatencyHistogram> hostLatency = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+    private final AtomicLongArray frontierByLevel = new AtomicLongArray(MAX_LEVELS);
+    private final AtomicLong spilled = new AtomicLong();
+    private final LongAdder evicted = new LongAdder();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final AtomicInteger busy = new AtomicInteger();
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+
+    /** Wraps the raw socket stream so that bytes on the wire are counted. */
+    public InputStream count(InputStream in) {
+        return new CountingInputStream(in, bytes);
+    }
+
+    public void pageFetched(String host, long nanos) {
+        pages.increment();
+        latency.recordNanos(nanos);
+        LatencyHistogram histogram = hostLatency.get(host);
+        if (histogram == null) {
+            if (hostLatency.size() >= MAX_TRACKED_HOSTS)
+                host = OTHER_HOSTS;
+            histogram = hostLatency.computeIfAbsent(host, key -> new LatencyHistogram(3));
+        }
+        histogram.recordNanos(nanos);
+    }
+
+    /** Counts a fetched page whose links were skipped because its content was already seen. */
+    public void duplicate(boolean exact) {
+        (exact ? duplicates : nearDuplicates).increment();
+    }
+
+    /** Counts a page answered with 304 whose links were taken from the validator store. */
+    public void notModified() {
+        notModified.increment();
+    }
+
+    public void error(String cause) {
+        errors.computeIfAbsent(cause, key -> new LongAdder()).increment();
+    }
+
+    public void error(IOException e) {
+        error(causeOf(e));
+    }
+
+    public static String causeOf(IOException e) {
+        if (e instanceof SocketTimeoutException)
+            return "timeout";
+        if (e instanceof UnknownHostException)
+            return "dns";
+        if (e instanceof ConnectException)
+            return "connect";
+        if (e instanceof EOFException)
+            return "eof";
+        return e.getClass().getSimpleName();
+    }
+
+    public void frontierAdded(int depth) {
+        frontierByLevel.incrementAndGet(Math.min(depth, MAX_LEVELS - 1));
+    }
+
+    public void frontierRemoved(int depth) {
+        frontierByLevel.decrementAndGet(Math.min(depth, MAX_LEVELS - 1));
+    }
+
+    /** Links moved to (positive) or back from (negative) the disk spill; their depth is not tracked. */
+    public void spilled(long delta) {
+        spilled.addAndGet(delta);
+    }
+
+    /** Counts a waiting link dropped because the frontier was full. */
+    public void evicted() {
+        evicted.increment();
+    }
+
+    public void workerStarted() {
+        workers.incrementAndGet();
+    }
+
+    public void workerStopped() {
+        workers.decrementAndGet();
+    }
+
+    public void fetchStarted() {
+        busy.incrementAndGet();
+    }
+
+    public void fetchFinished() {
+        busy.decrementAndGet();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getPagesFetched() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getBytesFetched() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getDuplicatePages() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public long getNearDuplicatePages() {
+        return nearDuplicates.sum();
+    }
+
+    @Override
+    public long getNotModifiedPages() {
+        return notModified.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return pages.sum() / elapsedSeconds();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return bytes.sum() / elapsedSeconds();
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.getPercentileMicros(50) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.getPercentileMicros(99) / 1000.0;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        TreeMap<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : errors.entrySet())
+            counts.put(entry.getKey(), entry.getValue().sum());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getHostLatencyP99Millis() {
+        TreeMap<String, Double> p99 = new TreeMap<String, Double>();
+        for (Map.Entry<String, LatencyHistogram> entry : hostLatency.entrySet())
+            p99.put(entry.getKey(), entry.getValue().getPercentileMicros(99) / 1000.0);
+        return p99;
+    }
+
+    @Override
+    public long[] getFrontierDepthByLevel() {
+        int levels = MAX_LEVELS;
+        while (levels > 0 && frontierByLevel.get(levels - 1) == 0)
+            levels--;
+        long[] depth = new long[levels];
+        for (int i = 0; i < levels; i++)
+            depth[i] = frontierByLevel.get(i);
+        return depth;
+    }
+
+    @Override
+    public long getSpilledLinks() {
+        return spilled.get();
+    }
+
+    @Override
+    public long getEvictedLinks() {
+        return evicted.sum();
+    }
+
+    @Override
+    public int getBusyWorkers() {
+        return busy.get();
+    }
+
+    @Override
+    public int getIdleWorkers() {
+        return Math.max(0, workers.get() - busy.get());
+    }
+
+    /** Publishes the metrics on the platform MBean server as crawler:type=CrawlMetrics,name=... */
+    public synchronized void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("crawler:type=CrawlMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.out.println("Cannot register crawl metrics: " + e.getMessage());
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+        }
+        objectName = null;
+    }
+
+    /** Prints one line of rates and counters every <code>period</code> milliseconds. */
+    public synchronized void startReporter(long period, PrintStream out) {
+        stopReporter();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crawl-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] last = {System.nanoTime(), 0, 0};
+        reporter.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long pagesNow = pages.sum();
+            long bytesNow = bytes.sum();
+            double seconds = Math.max(1e-9, (now - last[0]) / 1e9);
+            out.printf("pages %d (%.1f/s, %d dup, %d near-dup, %d not modified)  %.1f KB/s  latency p50 %.1f ms p99 %.1f ms  busy %d idle %d  frontier %s + %d spilled, %d evicted  errors %s%n",
+                    pagesNow, (pagesNow - last[1]) / seconds, getDuplicatePages(), getNearDuplicatePages(), getNotModifiedPages(), (bytesNow - last[2]) / seconds / 1024,
+                    getLatencyP50Millis(), getLatencyP99Millis(), getBusyWorkers(), getIdleWorkers(),
+                    Arrays.toString(getFrontierDepthByLevel()), getSpilledLinks(), getEvictedLinks(), getErrorCounts());
+            last[0] = now;
+            last[1] = pagesNow;
+            last[2] = bytesNow;
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+}
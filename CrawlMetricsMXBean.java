@@ -0,0 +1,39 @@
+import java.util.Map;
+
+/** Crawl counters as seen through JMX. Latencies are in milliseconds. */
+public interface CrawlMetricsMXBean {
+    long getPagesFetched();
+
+    long getBytesFetched();
+
+    long getDuplicatePages();
+
+    long getNearDuplicatePages();
+
+    /** Pages answered with 304 Not Modified during a recrawl. */
+    long getNotModifiedPages();
+
+    double getPagesPerSecond();
+
+    double getBytesPerSecond();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Double> getHostLatencyP99Millis();
+
+    /** Links waiting in memory, by crawl depth. */
+    long[] getFrontierDepthByLevel();
+
+    long getSpilledLinks();
+
+    /** Waiting links dropped because the frontier was full and there was no spill. */
+    long getEvictedLinks();
+
+    int getBusyWorkers();
+
+    int getIdleWorkers();
+}
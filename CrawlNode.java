@@ -0,0 +1,441 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One process of a distributed crawl. The processes share the host space
+ * through a HostRing; every process runs its own URLPool and CrawlerTask
+ * threads on the hosts it owns and forwards the links it finds for other hosts
+ * to their owners, in batches, over a TCP connection to every other process.
+ *
+ * Process 0 also detects the end of the crawl. It repeatedly asks every process
+ * whether it is idle and how many links it has sent and received; when two
+ * rounds in a row find every process idle, and the same totals with nothing
+ * sent that was not received, no link can be in flight any more and it tells
+ * every process to stop.
+ *
+ * A link that was counted as sent may be lost when a connection breaks, and
+ * the totals would then never agree, or agree on a crawl with holes in it. So
+ * a broken connection fails the crawl instead: the process stops its workers
+ * and closes its connections without saying goodbye, which fails the other
+ * processes in turn, and {@link #crawl} throws.
+ *
+ * usage: java CrawlNode id=0 nodes=127.0.0.1:7000,127.0.0.1:7001 seed=http://... [depth=3]
+ *        [threads=16] [hostDelay=250] [maxPerHost=2] [synthetic=HOSTS] [spill=DIR]
+ */
+public class CrawlNode implements LinkRouter {
+    public static final int BATCH = 256;
+    public static final long FLUSH_INTERVAL = 20;
+    public static final long PROBE_INTERVAL = 100;
+    public static final long CONNECT_TIMEOUT = 30000;
+    public static final long ROUND_TIMEOUT = 1000;
+
+    private static final byte LINKS = 1;
+    private static final byte PROBE = 2;
+    private static final byte STATUS = 3;
+    private static final byte STOP = 4;
+
+    /** Outgoing connection to another process and the links waiting to be sent there. */
+    private class Peer {
+        final int id;
+        final InetSocketAddress address;
+        final ArrayList<URLDepthPair> batch = new ArrayList<URLDepthPair>();
+        DataOutputStream out;
+
+        Peer(int id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        void connect() throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+            while (true) {
+                try {
+                    Socket socket = new Socket();
+                    socket.connect(address);
+                    socket.setTcpNoDelay(true);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                    out.writeInt(CrawlNode.this.id);
+                    out.flush();
+                    return;
+                } catch (ConnectException e) {
+                    if (System.currentTimeMillis() > deadline)
+                        throw e;
+                    Thread.sleep(100);
+                }
+            }
+        }
+
+        synchronized void add(URLDepthPair pair) {
+            batch.add(pair);
+            if (batch.size() >= BATCH)
+                flush();
+        }
+
+        /**
+         * Sends the waiting links. They count as sent before they are written, so they are never "in nobody's books".
+         * If the write fails they may or may not have arrived, and the crawl fails.
+         */
+        synchronized void flush() {
+            if (batch.isEmpty() || failure != null)
+                return;
+            sent.addAndGet(batch.size());
+            try {
+                out.writeByte(LINKS);
+                out.writeInt(batch.size());
+                for (URLDepthPair pair : batch) {
+                    out.writeInt(pair.getDepth());
+                    DataStrings.write(out, pair.getURL());
+                }
+                out.flush();
+            } catch (IOException e) {
+                pool.getMetrics().error("forward");
+                fail(new IOException("cannot forward to node " + id + ": " + e.getMessage(), e));
+                return;
+            }
+            batch.clear();
+        }
+
+        synchronized void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+            }
+        }
+
+        synchronized boolean isEmpty() {
+            return batch.isEmpty();
+        }
+
+        synchronized void send(byte type, int round, boolean idle, long sent, long received) throws IOException {
+            out.writeByte(type);
+            if (type == PROBE || type == STATUS)
+                out.writeInt(round);
+            if (type == STATUS) {
+                out.writeBoolean(idle);
+                out.writeLong(sent);
+                out.writeLong(received);
+            }
+            out.flush();
+        }
+    }
+
+    private final int id;
+    private final HostRing ring;
+    private final URLPool pool;
+    private final ServerSocket serverSocket;
+    private final Peer[] peers;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean stopped;
+    private volatile IOException failure;
+    private int statusRound;
+    private int statusCount;
+    private boolean statusIdle;
+    private long statusSent;
+    private long statusReceived;
+
+    /** @param nodes addresses of all processes; the one at <code>id</code> is this one */
+    public CrawlNode(int id, List<InetSocketAddress> nodes, URLPool pool) throws IOException {
+        if (id < 0 || id >= nodes.size())
+            throw new IllegalArgumentException("node id out of range");
+        this.id = id;
+        this.pool = pool;
+        ring = new HostRing(nodes.size());
+        peers = new Peer[nodes.size()];
+        for (int i = 0; i < peers.length; i++)
+            if (i != id)
+                peers[i] = new Peer(i, nodes.get(i));
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(nodes.get(id), 64);
+        daemon("node-" + id + "-acceptor", this::accept);
+        pool.setRouter(this);
+    }
+
+    @Override
+    public boolean isLocal(URLDepthPair pair) {
+        return ring.ownerOf(pair.getHost()) == id;
+    }
+
+    @Override
+    public void forward(URLDepthPair pair) {
+        peers[ring.ownerOf(pair.getHost())].add(pair);
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Connects to the other processes, adds the seed (or forwards it to its
+     * owner), runs the workers and returns when the whole crawl is over.
+     * @throws IOException if a connection to another process broke during the crawl
+     */
+    public void crawl(String seed, int threads) throws IOException, InterruptedException {
+        for (Peer peer : peers)
+            if (peer != null)
+                peer.connect();
+        daemon("node-" + id + "-flusher", this::flushLoop);
+        pool.addPair(new URLDepthPair(seed, 0));
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new CrawlerTask(pool), "node-" + id + "-crawler-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        started = true;
+        if (id == 0)
+            daemon("node-0-termination", this::detectTermination);
+        for (Thread worker : workers)
+            worker.join();
+        stopped = true;
+        serverSocket.close();
+        IOException failed = failure;
+        for (Peer peer : peers) {
+            if (peer == null)
+                continue;
+            if (failed == null) {
+                try {
+                    peer.send(STOP, 0, false, 0, 0);
+                } catch (IOException e) {
+                }
+            }
+            peer.close();
+        }
+        if (failed != null)
+            throw new IOException("node " + id + ": distributed crawl failed", failed);
+    }
+
+    /**
+     * Gives up on the crawl because links may have been lost: stops the
+     * workers, so that {@link #crawl} returns and throws.
+     */
+    private void fail(IOException e) {
+        synchronized (this) {
+            if (failure != null || stopped)
+                return;
+            failure = e;
+        }
+        System.out.println("Node " + id + ": crawl failed: " + e.getMessage());
+        pool.shutdown();
+    }
+
+    /** Idle means nothing to fetch, nothing being fetched and nothing waiting to be forwarded. */
+    private boolean isIdle() {
+        if (!started || !pool.isIdle())
+            return false;
+        for (Peer peer : peers)
+            if (peer != null && !peer.isEmpty())
+                return false;
+        return true;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                daemon("node-" + id + "-reader", () -> read(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    System.out.println("Node " + id + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the messages of one other process. Every process ends by sending
+     * STOP on each of its connections, so a connection that closes before
+     * that has broken.
+     */
+    private void read(Socket socket) {
+        boolean closing = false;
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+            int from = in.readInt();
+            while (true) {
+                byte type = in.readByte();
+                if (type == LINKS) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        int depth = in.readInt();
+                        URLDepthPair pair = URLDepthPair.create(DataStrings.read(in), depth);
+                        if (pair != null)
+                            pool.addPair(pair);
+                    }
+                    received.addAndGet(count);
+                } else if (type == PROBE) {
+                    int round = in.readInt();
+                    if (started)
+                        peers[from].send(STATUS, round, isIdle(), sent.get(), received.get());
+                } else if (type == STATUS) {
+                    status(in.readInt(), in.readBoolean(), in.readLong(), in.readLong());
+                } else if (type == STOP) {
+                    closing = true;
+                    pool.shutdown();
+                } else {
+                    throw new IOException("bad message type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            if (!closing)
+                fail(new IOException("connection closed in the middle of the crawl", e));
+        } catch (IOException e) {
+            if (!closing)
+                fail(e);
+        }
+    }
+
+    private void flushLoop() {
+        while (!stopped) {
+            for (Peer peer : peers)
+                if (peer != null)
+                    peer.flush();
+            try {
+                Thread.sleep(FLUSH_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void status(int round, boolean idle, long sent, long received) {
+        if (round != statusRound)
+            return;
+        statusCount++;
+        statusIdle &= idle;
+        statusSent += sent;
+        statusReceived += received;
+        notifyAll();
+    }
+
+    /** Runs probe rounds on process 0 until two rounds in a row agree that the crawl is over. */
+    private void detectTermination() {
+        long lastSent = -1;
+        long lastReceived = -1;
+        try {
+            while (!stopped) {
+                Thread.sleep(PROBE_INTERVAL);
+                synchronized (this) {
+                    statusRound++;
+                    statusCount = 0;
+                    statusIdle = true;
+                    statusSent = 0;
+                    statusReceived = 0;
+                }
+                for (Peer peer : peers)
+                    if (peer != null)
+                        peer.send(PROBE, statusRound, false, 0, 0);
+                status(statusRound, isIdle(), sent.get(), received.get());
+                boolean done;
+                synchronized (this) {
+                    long deadline = System.currentTimeMillis() + ROUND_TIMEOUT;
+                    while (statusCount < peers.length && System.currentTimeMillis() < deadline)
+                        wait(PROBE_INTERVAL);
+                    if (statusCount < peers.length)
+                        continue;
+                    boolean quiet = statusIdle && statusSent == statusReceived;
+                    done = quiet && statusSent == lastSent && statusReceived == lastReceived;
+                    lastSent = quiet ? statusSent : -1;
+                    lastReceived = quiet ? statusReceived : -1;
+                }
+                if (done) {
+                    for (Peer peer : peers)
+                        if (peer != null)
+                            peer.send(STOP, 0, false, 0, 0);
+                    pool.shutdown();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            fail(new IOException("termination detection failed: " + e.getMessage(), e));
+        } catch (InterruptedException e) {
+        }
+    }
+
+    private static void daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int id = -1;
+        List<InetSocketAddress> nodes = new ArrayList<InetSocketAddress>();
+        String seed = null;
+        int depth = 3;
+        int threads = 16;
+        long hostDelay = HostScheduler.DEFAULT_HOST_DELAY;
+        int maxPerHost = HostScheduler.DEFAULT_MAX_PER_HOST;
+        int synthetic = 0;
+        long report = 0;
+        File spill = null;
+        try {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq == -1)
+                    throw new IllegalArgumentException("bad argument: " + arg);
+                String value = arg.substring(eq + 1);
+                switch (arg.substring(0, eq)) {
+                    case "id": id = Integer.parseInt(value); break;
+                    case "nodes":
+                        for (String node : value.split(",")) {
+                            int colon = node.lastIndexOf(':');
+                            nodes.add(new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))));
+                        }
+                        break;
+                    case "seed": seed = value; break;
+                    case "depth": depth = Integer.parseInt(value); break;
+                    case "threads": threads = Integer.parseInt(value); break;
+                    case "hostDelay": hostDelay = Long.parseLong(value); break;
+                    case "maxPerHost": maxPerHost = Integer.parseInt(value); break;
+                    case "synthetic": synthetic = Integer.parseInt(value); break;
+                    case "report": report = Long.parseLong(value); break;
+                    case "spill": spill = new File(value); break;
+                    default: throw new IllegalArgumentException("unknown argument: " + arg.substring(0, eq));
+                }
+            }
+            if (id < 0 || nodes.isEmpty() || seed == null)
+                throw new IllegalArgumentException("id, nodes and seed are required");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("usage: java CrawlNode id=N nodes=host:port,... seed=URL [depth=N] [threads=N]"
+                    + " [hostDelay=ms] [maxPerHost=N] [synthetic=HOSTS] [report=ms] [spill=dir]");
+            return;
+        }
+        URLPool pool = new URLPool(depth, hostDelay, maxPerHost);
+        if (spill != null)
+            pool.setSpill(new FrontierSpill(spill), URLPool.DEFAULT_FRONTIER_CAPACITY);
+        for (int host = 0; host < synthetic; host++)
+            pool.getDnsCache().pin(SyntheticWebServer.hostName(host), InetAddress.getLoopbackAddress());
+        CrawlNode node = new CrawlNode(id, nodes, pool);
+        pool.getMetrics().register("node " + id);
+        if (report > 0)
+            pool.getMetrics().startReporter(report, System.out);
+        long start = System.nanoTime();
+        try {
+            node.crawl(seed, threads);
+        } finally {
+            CrawlBenchmark.unwatch(pool.getMetrics());
+        }
+        CrawlBenchmark.report("node " + id, pool.getMetrics(), System.nanoTime() - start);
+        System.out.println("node " + id + ": forwarded " + node.getSent() + " links, received " + node.getReceived());
+    }
+}
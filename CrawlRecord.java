@@ -0,0 +1,30 @@
+import java.util.Collections;
+import java.util.List;
+
+/** What the crawler learned about one link: how the fetch went and where the page points. */
+public class CrawlRecord {
+    public enum Kind { FETCHED, DUPLICATE, NEAR_DUPLICATE, FAILED, NOT_FETCHED, NOT_MODIFIED }
+
+    public final String url;
+    public final int depth;
+    public final Kind kind;
+    /** HTTP status, or 0 if there was no response. */
+    public final int status;
+    public final long timestamp;
+    public final long elapsedMicros;
+    public final List<String> outLinks;
+    /** Page text, or <code>null</code> if the sink did not ask for bodies. */
+    public final byte[] body;
+
+    public CrawlRecord(String url, int depth, Kind kind, int status, long timestamp, long elapsedMicros,
+                       List<String> outLinks, byte[] body) {
+        this.url = url;
+        this.depth = depth;
+        this.kind = kind;
+        this.status = status;
+        this.timestamp = timestamp;
+        this.elapsedMicros = elapsedMicros;
+        this.outLinks = outLinks == null ? Collections.<String>emptyList() : outLinks;
+        this.body = body;
+    }
+}
@@ -1,38 +1,53 @@
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
 import java.util.LinkedList;
 
 public class Crawler {
 
     static LinkedList <URLDepthPair> findLink = new LinkedList <URLDepthPair>();
-    static LinkedList <URLDepthPair> viewedLink = new LinkedList <URLDepthPair>();
+    static URLSeenFilter seenLink = new URLSeenFilter(1 << 16);
+    static DnsCache dnsCache = new DnsCache();
+    static CrawlMetrics metrics = new CrawlMetrics();
+    public static final long REPORT_INTERVAL = 5000;
 
 
-    public static void showResult(LinkedList<URLDepthPair> viewedLink) {
-        for (URLDepthPair c : viewedLink)
-            System.out.println("Depth : "+c.getDepth() + "\tLink : "+c.getURL());
-    }
-
-
-    public static void request(PrintWriter out,URLDepthPair pair) throws MalformedURLException {
+    public static void request(PrintWriter out,URLDepthPair pair) {
         out.println("GET " + pair.getPath() + " HTTP/1.1");
-        out.println("Host: " + pair.getHost());
+        out.println("Host: " + pair.getAuthority());
+        out.println("Accept-Encoding: " + HttpResponse.ACCEPT_ENCODING);
         out.println("Connection: close");
         out.println();
         out.flush();
     }
 
     public static void Process(String pair, int maxDepth) throws IOException {
-        findLink.add(new URLDepthPair(pair, 0));
+        crawl(pair, maxDepth, new PrintResultSink(System.out));
+    }
+
+    /** Runs the crawl and hands the record of every visited link to the sink. */
+    public static void crawl(String pair, int maxDepth, ResultSink sink) throws IOException {
+        URLDepthPair seed = new URLDepthPair(pair, 0);
+        findLink.add(seed);
+        seenLink.add(seed.getFingerprint());
+        metrics.frontierAdded(0);
+        metrics.workerStarted();
         while (!findLink.isEmpty()) {
             URLDepthPair currentPair = findLink.removeFirst();
+            metrics.frontierRemoved(currentPair.depth);
+            long timestamp = System.currentTimeMillis();
+            long start = System.nanoTime();
+            CrawlRecord.Kind kind = CrawlRecord.Kind.NOT_FETCHED;
+            int status = 0;
+            ArrayList<String> outLinks = new ArrayList<String>();
             if (currentPair.depth < maxDepth) {
-                Socket my_socket = new Socket(currentPair.getHost(), 80);
-                my_socket.setSoTimeout(1000);
-                try {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(my_socket.getInputStream()));
+                try (Socket my_socket = new Socket(dnsCache.resolve(currentPair.getHost()), currentPair.getPort())) {
+                    my_socket.setSoTimeout(1000);
                     PrintWriter out = new PrintWriter(my_socket.getOutputStream(), true);
                     request(out, currentPair);
+                    HttpResponse response = HttpResponse.read(new BufferedInputStream(metrics.count(my_socket.getInputStream())));
+                    status = response.getStatus();
+                    BufferedReader in = response.getReader();
                     String line;
                     while ((line = in.readLine()) != null) {
                         if (line.indexOf(currentPair.URL_PREFIX) != -1 && line.indexOf('"') != -1) {
@@ -48,27 +63,39 @@ public class Crawler {
                                     i++;
                                 }
                             }
-                            URLDepthPair newPair = new URLDepthPair(currentLink.toString(), currentPair.depth + 1);
-                            if (currentPair.check(findLink, newPair) && currentPair.check(viewedLink, newPair) && !currentPair.URL.equals(newPair.URL))
+                            URLDepthPair newPair = URLDepthPair.create(currentLink.toString(), currentPair.depth + 1);
+                            if (newPair != null)
+                                outLinks.add(newPair.getURL());
+                            if (newPair != null && seenLink.add(newPair.getFingerprint())) {
                                 findLink.add(newPair);
+                                metrics.frontierAdded(newPair.depth);
+                                dnsCache.prefetch(newPair.getHost());
+                            }
                         }
                     }
-                    my_socket.close();
-                } catch (SocketTimeoutException e) {
-                    my_socket.close();
+                    metrics.pageFetched(currentPair.getHost(), System.nanoTime() - start);
+                    kind = CrawlRecord.Kind.FETCHED;
+                } catch (IOException e) {
+                    metrics.error(e);
+                    kind = CrawlRecord.Kind.FAILED;
                 }
             }
-
-            viewedLink.add(currentPair);
+            sink.accept(new CrawlRecord(currentPair.getURL(), currentPair.depth, kind, status, timestamp,
+                    (System.nanoTime() - start) / 1000, outLinks, null));
         }
-        showResult(viewedLink);
+        metrics.workerStopped();
     }
     public static void main(String[] args) {
         String[] arg = new String[]{"https://natribu.org/ru","4"};
+        metrics.register("crawler");
+        metrics.startReporter(REPORT_INTERVAL, System.out);
         try {
             Process(arg[0], Integer.parseInt(arg[1]));
-        } catch (NumberFormatException | IOException e) {
+        } catch (IllegalArgumentException | IOException e) {
             System.out.println("usage: java crawler " + arg[0] + " " + arg[1]);
+        } finally {
+            metrics.stopReporter();
+            metrics.unregister();
         }
     }
 }
\ No newline at end of file
@@ -1,25 +1,40 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 
 public class CrawlerTask implements Runnable {
     URLPool urlPool;
     public static final String URL_PREFIX = "http:";
+    public static final int MAX_BODY = 1 << 20;
 
     public CrawlerTask(URLPool pool) {
         this.urlPool = pool;
+        pool.getMetrics().workerStarted();
     }
     public static void request(PrintWriter out,URLDepthPair pair) {
+        request(out, pair, null);
+    }
+    /** Sends the request, made conditional on the validators of the last crawl if there are any. */
+    public static void request(PrintWriter out, URLDepthPair pair, ValidatorStore.Entry cached) {
         out.println("GET " + pair.getPath() + " HTTP/1.1");
-        out.println("Host: " + pair.getHost());
+        out.println("Host: " + pair.getAuthority());
+        out.println("Accept-Encoding: " + HttpResponse.ACCEPT_ENCODING);
+        if (cached != null && cached.etag != null)
+            out.println("If-None-Match: " + cached.etag);
+        if (cached != null && cached.lastModified != null)
+            out.println("If-Modified-Since: " + cached.lastModified);
         out.println("Connection: close");
         out.println();
         out.flush();
     }
-    public static void buildNewUrl(String str,int depth,URLPool pool) {
+    /** Adds the first link of the line to the pool and returns it, or <code>null</code> if there is none. */
+    public static URLDepthPair buildNewUrl(String str,int depth,URLPool pool) {
         try {
             int end_of_link = str.indexOf("\"", str.indexOf(URL_PREFIX));
             if (end_of_link == -1 || (str.indexOf("'", str.indexOf(URL_PREFIX)) != -1 && str.indexOf("'", str.indexOf(URL_PREFIX)) < end_of_link)) {
@@ -29,33 +44,164 @@ public class CrawlerTask implements Runnable {
                 end_of_link = str.indexOf("<", str.indexOf(URL_PREFIX)) - 1;
             }
             String currentLink = str.substring(str.indexOf(URL_PREFIX), end_of_link);
-            pool.addPair(new URLDepthPair(currentLink, depth + 1));
+            URLDepthPair newPair = URLDepthPair.create(currentLink, depth + 1);
+            if (newPair != null)
+                pool.addPair(newPair);
+            return newPair;
         } catch (StringIndexOutOfBoundsException e) {
+            return null;
         }
     }
     @Override
     public void run() {
         while (true) {
             URLDepthPair currentPair = urlPool.getPair();
-            try {
-                Socket my_socket = new Socket(currentPair.getHost(), 80);
-                my_socket.setSoTimeout(1000);
-                try {
-                    PrintWriter out = new PrintWriter(my_socket.getOutputStream(), true);
-                    BufferedReader in =  new BufferedReader(new InputStreamReader(my_socket.getInputStream()));
-                    request(out,currentPair);
-                    String line;
-                    while ((line = in.readLine()) != null){
-                        if (line.indexOf(currentPair.URL_PREFIX)!=-1) {
-                            buildNewUrl(line,currentPair.getDepth(),urlPool);
-                        }
+            if (currentPair == null) {
+                urlPool.getMetrics().workerStopped();
+                return;
+            }
+            process(currentPair);
+        }
+    }
+
+    /** Fetches one link, reports the outcome to the pool and hands its record to the result sink. */
+    void process(URLDepthPair currentPair) {
+        CrawlMetrics metrics = urlPool.getMetrics();
+        ResultSink sink = urlPool.getResultSink();
+        metrics.fetchStarted();
+        long timestamp = System.currentTimeMillis();
+        long start = System.nanoTime();
+        Page page = new Page();
+        boolean retry = false;
+        try {
+            fetch(currentPair, page, sink.wantsBody());
+            retry = page.status == 429 || page.status / 100 == 5;
+        }
+        catch (UnknownHostException e) {
+            metrics.error(e);
+        }
+        catch (IOException e) {
+            metrics.error(e);
+            retry = true;
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.fetchFinished();
+        CrawlRecord.Kind kind;
+        if (page.notModified) {
+            metrics.pageFetched(currentPair.getHost(), elapsed);
+            metrics.notModified();
+            urlPool.completePair(currentPair, elapsed);
+            kind = CrawlRecord.Kind.NOT_MODIFIED;
+        } else if (page.match != null) {
+            metrics.pageFetched(currentPair.getHost(), elapsed);
+            urlPool.completePair(currentPair, elapsed);
+            kind = page.match == ContentIndex.Match.DUPLICATE ? CrawlRecord.Kind.DUPLICATE
+                    : page.match == ContentIndex.Match.NEAR_DUPLICATE ? CrawlRecord.Kind.NEAR_DUPLICATE
+                    : CrawlRecord.Kind.FETCHED;
+            if (kind != CrawlRecord.Kind.FETCHED)
+                metrics.duplicate(kind == CrawlRecord.Kind.DUPLICATE);
+        } else {
+            if (urlPool.failPair(currentPair, retry))
+                return;
+            kind = CrawlRecord.Kind.FAILED;
+        }
+        try {
+            sink.accept(new CrawlRecord(currentPair.getURL(), currentPair.getDepth(), kind, page.status, timestamp,
+                    elapsed / 1000, page.outLinks, page.body));
+        } catch (IOException e) {
+            metrics.error("sink");
+        }
+    }
+
+    /** What one fetch produced. */
+    private static class Page {
+        int status;
+        boolean notModified;
+        ContentIndex.Match match;
+        ArrayList<String> outLinks = new ArrayList<String>();
+        byte[] body;
+    }
+
+    private void fetch(URLDepthPair currentPair, Page page, boolean keepBody) throws IOException {
+        CrawlMetrics metrics = urlPool.getMetrics();
+        int timeout = urlPool.timeoutFor(currentPair);
+        Socket my_socket = new Socket();
+        try {
+            my_socket.connect(new InetSocketAddress(urlPool.getDnsCache().resolve(currentPair.getHost()), currentPair.getPort()), timeout);
+            my_socket.setSoTimeout(timeout);
+            ValidatorStore validators = urlPool.getValidators();
+            ValidatorStore.Entry cached = validators == null ? null : cached(validators, currentPair);
+            PrintWriter out = new PrintWriter(my_socket.getOutputStream(), true);
+            request(out, currentPair, cached);
+            HttpResponse response = HttpResponse.read(new BufferedInputStream(metrics.count(my_socket.getInputStream())));
+            page.status = response.getStatus();
+            if (page.status == 304 && cached != null) {
+                page.notModified = true;
+                for (String link : cached.outLinks) {
+                    URLDepthPair newPair = URLDepthPair.create(link, currentPair.getDepth() + 1);
+                    if (newPair != null) {
+                        urlPool.addPair(newPair);
+                        page.outLinks.add(newPair.getURL());
                     }
-                    my_socket.close();
-                } catch (SocketTimeoutException e) {
-                    my_socket.close();
+                }
+                return;
+            }
+            if (page.status / 100 != 2)
+                metrics.error("http " + page.status);
+            if (page.status == 429 || page.status / 100 == 5)
+                return;
+            BufferedReader in = response.getReader();
+            ContentFingerprint content = new ContentFingerprint();
+            ArrayList<String> linkLines = new ArrayList<String>();
+            StringBuilder body = keepBody ? new StringBuilder() : null;
+            String line;
+            while ((line = in.readLine()) != null){
+                content.update(line);
+                if (body != null && body.length() < MAX_BODY)
+                    body.append(line).append('\n');
+                if (line.indexOf(currentPair.URL_PREFIX)!=-1) {
+                    linkLines.add(line);
                 }
             }
-            catch (IOException e) {}
+            page.match = urlPool.getContentIndex().add(content);
+            if (page.match == ContentIndex.Match.NEW) {
+                for (String linkLine : linkLines) {
+                    URLDepthPair newPair = buildNewUrl(linkLine,currentPair.getDepth(),urlPool);
+                    if (newPair != null)
+                        page.outLinks.add(newPair.getURL());
+                }
+            }
+            if (body != null)
+                page.body = body.toString().getBytes(StandardCharsets.UTF_8);
+            if (validators != null && page.status / 100 == 2)
+                remember(validators, currentPair, response, content.getExactHash(), page.outLinks, cached);
+        } finally {
+            my_socket.close();
+        }
+    }
+
+    private ValidatorStore.Entry cached(ValidatorStore validators, URLDepthPair pair) {
+        try {
+            return validators.get(pair.getFingerprint());
+        } catch (IOException e) {
+            urlPool.getMetrics().error("validators");
+            return null;
+        }
+    }
+
+    /** Stores the validators of a fetched page, unless the page has none or they did not change. */
+    private void remember(ValidatorStore validators, URLDepthPair pair, HttpResponse response, long contentHash,
+                          ArrayList<String> outLinks, ValidatorStore.Entry cached) {
+        String etag = response.getHeader("etag");
+        String lastModified = response.getHeader("last-modified");
+        if (etag == null && lastModified == null)
+            return;
+        if (cached != null && cached.contentHash == contentHash && cached.sameValidators(etag, lastModified))
+            return;
+        try {
+            validators.put(pair.getFingerprint(), new ValidatorStore.Entry(etag, lastModified, contentHash, outLinks));
+        } catch (IOException e) {
+            urlPool.getMetrics().error("validators");
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Strings in the crawler's binary files and streams: an int length and the
+ * UTF-8 bytes. DataOutput.writeUTF stops at 64 KB of modified UTF-8, which a
+ * long URL can go beyond, and then leaves the output half written.
+ */
+public final class DataStrings {
+    /** Longest string read back; a larger length means the data is corrupt. */
+    public static final int MAX_LENGTH = 16 << 20;
+
+    private DataStrings() {
+    }
+
+    public static void write(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** @throws IOException also if the length is negative or over MAX_LENGTH */
+    public static String read(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_LENGTH)
+            throw new IOException("bad string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Crawler-level host name cache. Hosts are resolved in the background as soon
+ * as a link to them is found ({@link #prefetch}), so that when the link is
+ * fetched {@link #resolve} normally returns at once. Failures are cached too,
+ * for a shorter time, so a dead host is not looked up for every link to it.
+ */
+public class DnsCache {
+    public static final long DEFAULT_TTL = 5 * 60 * 1000;
+    public static final long DEFAULT_NEGATIVE_TTL = 30 * 1000;
+    public static final int DEFAULT_RESOLVERS = 4;
+
+    private static class Entry {
+        final CompletableFuture<InetAddress> address = new CompletableFuture<InetAddress>();
+        volatile long expiresAt = Long.MAX_VALUE;
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ExecutorService resolvers;
+    private final long ttl;
+    private final long negativeTtl;
+
+    public DnsCache() {
+        this(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_RESOLVERS);
+    }
+
+    public DnsCache(long ttl, long negativeTtl, int resolverThreads) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.resolvers = Executors.newFixedThreadPool(resolverThreads, r -> {
+            Thread thread = new Thread(r, "dns-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Starts resolving the host unless a fresh answer is already cached or on its way. */
+    public void prefetch(String host) {
+        lookup(host);
+    }
+
+    /** Returns the address of the host, waiting only if its lookup is still running. */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        try {
+            return lookup(host).address.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(host + ": interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException)
+                throw (UnknownHostException) e.getCause();
+            throw new UnknownHostException(host + ": " + e.getCause());
+        }
+    }
+
+    /** Makes the host resolve to the given address for as long as the cache lives. */
+    public void pin(String host, InetAddress address) {
+        Entry entry = new Entry();
+        entry.address.complete(address);
+        entries.put(host.toLowerCase(), entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry lookup(String host) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(host);
+        if (entry != null && entry.expiresAt > now)
+            return entry;
+        Entry fresh = new Entry();
+        Entry current = entries.compute(host, (key, old) -> old != null && old.expiresAt > now ? old : fresh);
+        if (current == fresh)
+            resolvers.execute(() -> resolveNow(host, fresh));
+        return current;
+    }
+
+    private void resolveNow(String host, Entry entry) {
+        try {
+            InetAddress address = InetAddress.getByName(host);
+            entry.expiresAt = System.currentTimeMillis() + ttl;
+            entry.address.complete(address);
+        } catch (UnknownHostException | RuntimeException e) {
+            entry.expiresAt = System.currentTimeMillis() + negativeTtl;
+            entry.address.completeExceptionally(e);
+        }
+    }
+}
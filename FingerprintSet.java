@@ -0,0 +1,126 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Concurrent set of 64-bit fingerprints. The set is split into stripes, each of
+ * them a primitive open-addressing table with linear probing guarded by its own
+ * lock, so threads adding different URLs rarely wait for each other. A table
+ * entry costs 8 bytes, about 11 bytes per fingerprint at the maximum load.
+ * Zero marks an empty slot and is never a valid fingerprint.
+ */
+public class FingerprintSet {
+    private static final int STRIPE_BITS = 6;
+    private static final double MAX_LOAD = 0.75;
+
+    private static class Stripe {
+        long[] table;
+        int size;
+
+        Stripe(int capacity) {
+            table = new long[capacity];
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    public FingerprintSet() {
+        this(1 << 16);
+    }
+
+    /** @param expected number of fingerprints the set should hold without growing */
+    public FingerprintSet(long expected) {
+        long perStripe = (long) (expected / MAX_LOAD / stripes.length) + 1;
+        int capacity = 16;
+        while (capacity < perStripe && capacity < 1 << 30)
+            capacity <<= 1;
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe(capacity);
+    }
+
+    /** Adds the fingerprint and returns <code>true</code> if it was not in the set yet. */
+    public boolean add(long fingerprint) {
+        if (fingerprint == 0)
+            throw new IllegalArgumentException("zero fingerprint");
+        Stripe stripe = stripes[(int) (fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe) {
+            if (!insert(stripe.table, fingerprint))
+                return false;
+            if (++stripe.size > stripe.table.length * MAX_LOAD)
+                grow(stripe);
+            return true;
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        Stripe stripe = stripes[(int) (fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe) {
+            long[] table = stripe.table;
+            int mask = table.length - 1;
+            for (int i = (int) fingerprint & mask; table[i] != 0; i = (i + 1) & mask)
+                if (table[i] == fingerprint)
+                    return true;
+            return false;
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        return size;
+    }
+
+    /** Writes the fingerprints; concurrent adds may or may not be included. */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(stripes.length);
+        for (Stripe stripe : stripes) {
+            long[] table;
+            int size;
+            synchronized (stripe) {
+                table = stripe.table.clone();
+                size = stripe.size;
+            }
+            out.writeInt(table.length);
+            out.writeInt(size);
+            for (long fingerprint : table)
+                if (fingerprint != 0)
+                    out.writeLong(fingerprint);
+        }
+    }
+
+    public static FingerprintSet readFrom(DataInputStream in) throws IOException {
+        FingerprintSet set = new FingerprintSet(0);
+        if (in.readInt() != set.stripes.length)
+            throw new IOException("fingerprint set written with another layout");
+        for (Stripe stripe : set.stripes) {
+            stripe.table = new long[in.readInt()];
+            stripe.size = in.readInt();
+            for (int i = 0; i < stripe.size; i++)
+                insert(stripe.table, in.readLong());
+        }
+        return set;
+    }
+
+    private static boolean insert(long[] table, long fingerprint) {
+        int mask = table.length - 1;
+        int i = (int) fingerprint & mask;
+        while (table[i] != 0) {
+            if (table[i] == fingerprint)
+                return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = fingerprint;
+        return true;
+    }
+
+    private static void grow(Stripe stripe) {
+        long[] bigger = new long[stripe.table.length * 2];
+        for (long fingerprint : stripe.table)
+            if (fingerprint != 0)
+                insert(bigger, fingerprint);
+        stripe.table = bigger;
+    }
+}
@@ -4,12 +4,22 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.math.BigDecimal;
 
 public class FractalExplorer extends JFrame {
     private int size;
     private JImageDisplay imageDisplay;
     private FractalGenerator fractal;
     private Rectangle2D.Double range;
+    private FractalRenderer renderer;
+    /** Counts of the pixels on screen, so the colors can change without a new render. */
+    private IterationBuffer iterations;
+    private JComboBox<String> palettes;
+    /** Colors of the counts on screen; only used on the event thread. */
+    private Palette palette = Palette.HUE;
+    /** The deep zoom in use, or null while the range is in plain coordinates. */
+    private PerturbedMandelbrot deepZoom;
 
     public static void main(String[] args) {
         FractalExplorer fractalExplorer = new FractalExplorer(400);
@@ -24,46 +34,96 @@ public class FractalExplorer extends JFrame {
         fractal = new Mandelbrot();
         fractal.getInitialRange(range);
         imageDisplay = new JImageDisplay(size,size);
+        iterations = new IterationBuffer(size,size);
+        renderer = new FractalRenderer();
+        renderer.setCache(new TileCache(TileCache.DEFAULT_MAX_BYTES));
     }
 
     private void creatAndShowGUI(){
         JFrame frame = new JFrame("Fractal");
         JButton button = new JButton("Reset");
+        palettes = new JComboBox<String>(new String[] {"Hue", "Equalized"});
+        JButton export = new JButton("Export counts");
         ResetEvent resetEvent = new ResetEvent();
         MouseHandler mouseHandler = new MouseHandler();
 
         imageDisplay.addMouseListener(mouseHandler);
         button.addActionListener(resetEvent);
+        palettes.addActionListener(e -> recolor());
+        export.addActionListener(e -> exportCounts(frame));
 
         imageDisplay.setLayout(new BorderLayout());
 
+        JPanel controls = new JPanel();
+        controls.add(button);
+        controls.add(palettes);
+        controls.add(export);
         frame.add(imageDisplay,BorderLayout.CENTER);
-        frame.add(button,BorderLayout.SOUTH);
+        frame.add(controls,BorderLayout.SOUTH);
         frame.pack();
         frame.setVisible(true);
         frame.setResizable(false);
     }
 
+    /**
+     * Starts rendering the current range in the background; tiles appear as
+     * they are done. A render still running from an earlier zoom is cancelled.
+     * The tiles are colored on the event thread with the palette chosen at
+     * that moment, and when the render is done the colors are made again from
+     * the whole view, which the equalized palette depends on.
+     */
     private void drawFractal(){
-        for(int i = 0; i < size; i++){
-            for(int j = 0; j < size; j++){
-                double xCoord = FractalGenerator.getCoord(range.x,range.x + range.width, size, i);
-                double yCoord = FractalGenerator.getCoord(range.y,range.y + range.height, size, j);
-                int iter = fractal.numIterations(xCoord,yCoord);
-                if (iter == -1)imageDisplay.drawPixel(i,j,0);
-                else {
-                    float hue = 0.7f + (float)iter / 200f;
-                    imageDisplay.drawPixel(i,j,Color.HSBtoRGB(hue,1f,1f));
-                }
+        renderer.render(deepZoom != null ? deepZoom : fractal, range, size, size, new FractalRenderer.TileConsumer() {
+            @Override
+            public void tileDone(FractalRenderer.Render render, int x, int y, int width, int height, int[] counts) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!render.isCancelled()) {
+                        iterations.setTile(x, y, width, height, counts);
+                        int[] rgb = new int[counts.length];
+                        palette.color(counts, 0, rgb, 0, counts.length);
+                        imageDisplay.drawTile(x, y, width, height, rgb);
+                    }
+                });
             }
-        }
+
+            @Override
+            public void renderDone(FractalRenderer.Render render) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!render.isCancelled() && palettes.getSelectedIndex() == 1)
+                        recolor();
+                });
+            }
+        });
+    }
+
+    /**
+     * Colors the counts on screen with the chosen palette. The equalized
+     * palette is made from the view on screen, when it is chosen and after
+     * every render.
+     */
+    private void recolor(){
+        palette = palettes.getSelectedIndex() == 1
+                ? Palette.equalized(iterations.histogram(Mandelbrot.MAX_ITERATIONS)) : Palette.HUE;
+        iterations.color(palette, imageDisplay.getPixels());
         imageDisplay.repaint();
     }
 
+    private void exportCounts(Component parent){
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            iterations.writeTo(chooser.getSelectedFile());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(parent, "Cannot export: " + e.getMessage());
+        }
+    }
+
     private class ResetEvent implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
             fractal.getInitialRange(range);
+            deepZoom = null;
             drawFractal();
         }
     }
@@ -77,6 +137,14 @@ public class FractalExplorer extends JFrame {
             double xCoord = FractalGenerator.getCoord(range.x, range.x + range.width, size, x);
             double yCoord = FractalGenerator.getCoord(range.y, range.y + range.height, size, y);
             fractal.recenterAndZoomRange(range, xCoord, yCoord, 0.5);
+            if (deepZoom != null) {
+                deepZoom = deepZoom.recenter(xCoord, yCoord, range.width);
+                PerturbedMandelbrot.centerRange(range, range.width);
+            } else if (fractal instanceof Mandelbrot && PerturbedMandelbrot.isNeeded(range, size)) {
+                deepZoom = new PerturbedMandelbrot(new BigDecimal(xCoord), new BigDecimal(yCoord),
+                        range.width, Mandelbrot.MAX_ITERATIONS);
+                PerturbedMandelbrot.centerRange(range, range.width);
+            }
             drawFractal();
         }
     }
@@ -1,3 +1,5 @@
+package com.company;
+
 import java.awt.geom.Rectangle2D;
 
 
@@ -7,6 +9,15 @@ import java.awt.geom.Rectangle2D;
  */
 public abstract class FractalGenerator {
 
+    /**
+     * Whether the batch method of the built-in fractals runs on the Vector
+     * API. It needs the incubator module (--add-modules jdk.incubator.vector)
+     * and can be switched off with -Dfractal.scalar=true.
+     */
+    protected static final boolean VECTORIZED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                    && !Boolean.getBoolean("fractal.scalar");
+
     /**
      * This static helper function takes an integer coordinate and converts it
      * into a double-precision value corresponding to a specific range.  It is
@@ -57,6 +68,27 @@ public abstract class FractalGenerator {
     }
 
 
+    /**
+     * Identifies what the generator computes, for the TileCache: generators
+     * with equal keys give equal counts for the same point. By default the
+     * class.
+     */
+    public Object getCacheKey() {
+        return getClass();
+    }
+
+
+    /**
+     * Whether the escape-time bands of the fractal are connected, so that
+     * MarianiSilver subdivision can fill a region from its border without
+     * losing anything. The renderers only subdivide when this is true; by
+     * default it is false.
+     */
+    public boolean isSubdivisionSafe() {
+        return false;
+    }
+
+
     /**
      * Given a coordinate <em>x</em> + <em>iy</em> in the complex plane,
      * computes and returns the number of iterations before the fractal
@@ -65,5 +97,27 @@ public abstract class FractalGenerator {
      * with a result of -1.
      */
     public abstract int numIterations(double x, double y);
+
+
+    /**
+     * Computes {@link #numIterations(double, double)} for the points
+     * <em>xs[i]</em> + <em>iy</em>, from &lt;= i &lt; to, into counts[i].
+     * Subclasses can replace it with a faster batch loop that gives the same
+     * counts.
+     */
+    public void numIterations(double[] xs, double y, int[] counts, int from, int to) {
+        for (int i = from; i < to; i++)
+            counts[i] = numIterations(xs[i], y);
+    }
+
+
+    /**
+     * Computes {@link #numIterations(double, double)} for the points
+     * <em>xs[i]</em> + <em>iys[i]</em>, from &lt;= i &lt; to, into counts[i].
+     */
+    public void numIterations(double[] xs, double[] ys, int[] counts, int from, int to) {
+        for (int i = from; i < to; i++)
+            counts[i] = numIterations(xs[i], ys[i]);
+    }
 }
 
@@ -0,0 +1,323 @@
+package com.company;
+
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes fractal images in square tiles on a ForkJoinPool. The tiles are
+ * split recursively between the worker threads, so a thread that finished its
+ * cheap tiles steals from one that is stuck in the middle of the set. Every
+ * finished tile is handed to a TileConsumer right away, and starting a new
+ * render cancels the one still running.
+ *
+ * A tile of a fractal that is {@link FractalGenerator#isSubdivisionSafe safe}
+ * for it, such as the Mandelbrot set, is filled by Mariani-Silver subdivision,
+ * which skips the inside of uniform regions like the body of the set; it can
+ * be turned off to compute every pixel. Other fractals are always computed
+ * pixel by pixel.
+ *
+ * Rendering is progressive by default: a first pass computes every 8th pixel
+ * in both directions and draws it as a block, and each further pass halves
+ * the step, computing only the samples the earlier passes do not have. Every
+ * pass hands all tiles to the consumer again, so a coarse image shows up after
+ * about 1/64 of the work. The last pass uses subdivision when it is on.
+ *
+ * With a TileCache the iteration counts of finished tiles are kept, and a tile
+ * found there is shown at full resolution in the first pass.
+ */
+public class FractalRenderer {
+    public static final int TILE_SIZE = 32;
+    /** Step of the first progressive pass; TILE_SIZE is a multiple of it. */
+    public static final int PREVIEW_STEP = 8;
+
+    /**
+     * Receives finished tiles as iteration counts, row by row; called on the
+     * pool's threads. Coloring them is up to the consumer, which owns the array.
+     */
+    public interface TileConsumer {
+        void tileDone(Render render, int x, int y, int width, int height, int[] counts);
+
+        /** Called once after the last tile of the last pass, unless the render was cancelled. */
+        default void renderDone(Render render) {
+        }
+    }
+
+    /** One render of a frame; it can be cancelled while its tiles are computed. */
+    public static class Render {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * What the tiles of one render share. The pixels lie on the lattice of the
+     * pixel size, pixel (i, j) of the lattice being the point
+     * (i * pixelX, j * pixelY), and the tiles are the TILE_SIZE blocks of that
+     * lattice, so the same tile comes back whenever a view shows it again. The
+     * image starts at lattice pixel (originX, originY); tiles at its edges are
+     * computed whole and handed on cut to the image.
+     */
+    private class Frame {
+        final Render render;
+        final FractalGenerator fractal;
+        final TileConsumer consumer;
+        final TileCache cache;
+        final boolean subdivide;
+        final int width;
+        final int height;
+        final double pixelX;
+        final double pixelY;
+        final long originX;
+        final long originY;
+        final long firstColumn;
+        final long firstRow;
+        final int columns;
+        final int tiles;
+        final int[][] counts;
+        final boolean[] complete;
+
+        Frame(Render render, FractalGenerator fractal, Rectangle2D.Double range, int width, int height,
+              TileConsumer consumer) {
+            this.render = render;
+            this.fractal = fractal;
+            this.consumer = consumer;
+            this.cache = FractalRenderer.this.cache;
+            this.subdivide = FractalRenderer.this.subdivide && fractal.isSubdivisionSafe();
+            this.width = width;
+            this.height = height;
+            pixelX = range.width / width;
+            pixelY = range.height / height;
+            originX = (long) Math.floor(range.x / pixelX);
+            originY = (long) Math.floor(range.y / pixelY);
+            firstColumn = Math.floorDiv(originX, TILE_SIZE);
+            firstRow = Math.floorDiv(originY, TILE_SIZE);
+            columns = (int) (Math.floorDiv(originX + width - 1, TILE_SIZE) - firstColumn + 1);
+            int rows = (int) (Math.floorDiv(originY + height - 1, TILE_SIZE) - firstRow + 1);
+            tiles = columns * rows;
+            counts = new int[tiles][];
+            complete = new boolean[tiles];
+        }
+
+        TileCache.Key key(int tile) {
+            return new TileCache.Key(fractal.getCacheKey(), pixelX, pixelY,
+                    firstColumn + tile % columns, firstRow + tile / columns);
+        }
+    }
+
+    /** Runs the passes of one render one after another. */
+    private class PassTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Frame frame;
+
+        PassTask(Frame frame) {
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            int step = progressive ? PREVIEW_STEP : 1;
+            int done = 0;
+            for (; step >= 1 && !frame.render.isCancelled(); step /= 2) {
+                new TileTask(frame, 0, frame.tiles, step, done).invoke();
+                done = step;
+                // subdivision does not reuse the samples, so its previews stop at half the first step
+                if (frame.subdivide && step > 1 && step <= PREVIEW_STEP / 2)
+                    step = 2;
+            }
+            if (!frame.render.isCancelled())
+                frame.consumer.renderDone(frame.render);
+        }
+    }
+
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Frame frame;
+        final int from;
+        final int to;
+        final int step;
+        final int done;
+
+        /**
+         * Computes the tiles from &lt;= tile &lt; to at the given step, where
+         * the samples of the step <code>done</code> are there already
+         * (0 for none).
+         */
+        TileTask(Frame frame, int from, int to, int step, int done) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+            this.done = done;
+        }
+
+        @Override
+        protected void compute() {
+            Render render = frame.render;
+            if (render.isCancelled())
+                return;
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(frame, from, middle, step, done), new TileTask(frame, middle, to, step, done));
+                return;
+            }
+            if (frame.complete[from])
+                return;
+            // looked up in the first pass only, so every tile is one hit or one miss per render
+            int[] tile = frame.cache == null || done > 0 ? null : frame.cache.get(frame.key(from));
+            if (tile != null) {
+                frame.counts[from] = tile;
+                frame.complete[from] = true;
+                deliver(tile, 1);
+                return;
+            }
+            long x0 = (frame.firstColumn + from % frame.columns) * TILE_SIZE;
+            long y0 = (frame.firstRow + from / frame.columns) * TILE_SIZE;
+            double[] xs = new double[TILE_SIZE];
+            double[] ys = new double[TILE_SIZE];
+            for (int i = 0; i < TILE_SIZE; i++) {
+                xs[i] = (x0 + i) * frame.pixelX;
+                ys[i] = (y0 + i) * frame.pixelY;
+            }
+            if (frame.counts[from] == null)
+                frame.counts[from] = new int[TILE_SIZE * TILE_SIZE];
+            tile = frame.counts[from];
+            FractalGenerator fractal = frame.fractal;
+            if (step == 1 && frame.subdivide) {
+                MarianiSilver.fill(fractal, xs, ys, tile);
+            } else if (step > 1 || done > 0) {
+                samples(fractal, xs, ys, tile, step, done);
+            } else {
+                int[] line = new int[TILE_SIZE];
+                for (int j = 0; j < TILE_SIZE; j++) {
+                    if (render.isCancelled())
+                        return;
+                    fractal.numIterations(xs, ys[j], line, 0, TILE_SIZE);
+                    System.arraycopy(line, 0, tile, j * TILE_SIZE, TILE_SIZE);
+                }
+            }
+            if (render.isCancelled())
+                return;
+            if (step == 1) {
+                frame.complete[from] = true;
+                if (frame.cache != null)
+                    frame.cache.put(frame.key(from), tile);
+            }
+            deliver(tile, step);
+        }
+
+        /**
+         * Cuts out the part of the tile inside the image, each sample as a
+         * step x step block, and hands it to the consumer.
+         */
+        private void deliver(int[] tile, int step) {
+            long x0 = (frame.firstColumn + from % frame.columns) * TILE_SIZE - frame.originX;
+            long y0 = (frame.firstRow + from / frame.columns) * TILE_SIZE - frame.originY;
+            int left = (int) Math.max(0, -x0);
+            int top = (int) Math.max(0, -y0);
+            int right = (int) Math.min(TILE_SIZE, frame.width - x0);
+            int bottom = (int) Math.min(TILE_SIZE, frame.height - y0);
+            int w = right - left;
+            int h = bottom - top;
+            int[] cut = new int[w * h];
+            for (int j = 0; j < h; j++) {
+                int row = (top + j) / step * step * TILE_SIZE;
+                if (step == 1) {
+                    System.arraycopy(tile, row + left, cut, j * w, w);
+                    continue;
+                }
+                for (int i = 0; i < w; i++)
+                    cut[j * w + i] = tile[row + (left + i) / step * step];
+            }
+            frame.consumer.tileDone(frame.render, (int) x0 + left, (int) y0 + top, w, h, cut);
+        }
+    }
+
+    /**
+     * Computes the samples at multiples of step that are not at multiples of
+     * done, in one batch.
+     */
+    private static void samples(FractalGenerator fractal, double[] xs, double[] ys, int[] counts, int step, int done) {
+        int w = xs.length;
+        int h = ys.length;
+        int n = ((w + step - 1) / step) * ((h + step - 1) / step);
+        double[] px = new double[n];
+        double[] py = new double[n];
+        int[] index = new int[n];
+        int k = 0;
+        for (int j = 0; j < h; j += step) {
+            for (int i = 0; i < w; i += step) {
+                if (done > 0 && i % done == 0 && j % done == 0)
+                    continue;
+                px[k] = xs[i];
+                py[k] = ys[j];
+                index[k++] = j * w + i;
+            }
+        }
+        int[] found = new int[k];
+        fractal.numIterations(px, py, found, 0, k);
+        for (int m = 0; m < k; m++)
+            counts[index[m]] = found[m];
+    }
+
+    private final ForkJoinPool pool;
+    private Render current;
+    private volatile boolean subdivide = true;
+    private volatile boolean progressive = true;
+    private volatile TileCache cache;
+
+    public FractalRenderer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public FractalRenderer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Whether tiles are filled by Mariani-Silver subdivision instead of pixel
+     * by pixel, for the fractals that are safe for it.
+     */
+    public void setSubdivision(boolean subdivide) {
+        this.subdivide = subdivide;
+    }
+
+    /** Whether a render starts with coarse passes that are refined, instead of one full pass. */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /** Cache of finished tiles to look up before computing one; null for none. */
+    public void setCache(TileCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Starts rendering the range into a width x height image and returns at
+     * once. The render that was running before is cancelled. The range is
+     * read before this returns, so the caller may change it right away; its
+     * corner is moved to the pixel lattice, by less than a pixel.
+     */
+    public synchronized Render render(FractalGenerator fractal, Rectangle2D.Double range, int width, int height,
+                                      TileConsumer consumer) {
+        cancel();
+        Render render = new Render();
+        current = render;
+        pool.execute(new PassTask(new Frame(render, fractal, range, width, height, consumer)));
+        return render;
+    }
+
+    public synchronized void cancel() {
+        if (current != null)
+            current.cancel();
+        current = null;
+    }
+}
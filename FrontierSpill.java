@@ -0,0 +1,143 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FIFO overflow of the frontier kept on disk. Links are appended to fixed-size,
+ * memory-mapped segment files and read back in the same order, so only the
+ * mapped pages the OS chooses to keep cost memory.
+ *
+ * A record is its length, the depth and the URL in UTF-8; a length of -1 seals
+ * a segment. Consumed segments are deleted only by {@link #releaseConsumed},
+ * after a checkpoint no longer needs them. Not thread safe.
+ */
+public class FrontierSpill {
+    public static final int SEGMENT_SIZE = 8 << 20;
+    private static final int SEALED = -1;
+
+    private final File dir;
+    private int readSegment;
+    private int readPos;
+    private int writeSegment;
+    private int writePos;
+    private long size;
+    private int firstKept;
+    private MappedByteBuffer readBuffer;
+    private MappedByteBuffer writeBuffer;
+
+    public FrontierSpill(File dir) throws IOException {
+        this(dir, 0, 0, 0, 0, 0);
+    }
+
+    private FrontierSpill(File dir, int readSegment, int readPos, int writeSegment, int writePos, long size)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("cannot create " + dir);
+        this.dir = dir;
+        this.readSegment = readSegment;
+        this.readPos = readPos;
+        this.writeSegment = writeSegment;
+        this.writePos = writePos;
+        this.size = size;
+        this.firstKept = readSegment;
+        writeBuffer = map(writeSegment);
+    }
+
+    public void append(URLDepthPair pair) throws IOException {
+        byte[] url = pair.getURL().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + url.length;
+        if (length + 4 > SEGMENT_SIZE)
+            throw new IOException("URL too long to spill");
+        if (writePos + length + 4 > SEGMENT_SIZE) {
+            writeBuffer.putInt(writePos, SEALED);
+            writeBuffer.force();
+            writeSegment++;
+            writePos = 0;
+            writeBuffer = map(writeSegment);
+        }
+        writeBuffer.putInt(writePos, url.length);
+        writeBuffer.putInt(writePos + 4, pair.getDepth());
+        writeBuffer.position(writePos + 8);
+        writeBuffer.put(url);
+        writePos += length;
+        size++;
+    }
+
+    /** Returns the oldest spilled link, or <code>null</code> if the spill is empty. */
+    public URLDepthPair poll() throws IOException {
+        if (size == 0)
+            return null;
+        MappedByteBuffer buffer = readBuffer();
+        int length = buffer.getInt(readPos);
+        if (length == SEALED) {
+            readSegment++;
+            readPos = 0;
+            readBuffer = null;
+            buffer = readBuffer();
+            length = buffer.getInt(readPos);
+        }
+        byte[] url = new byte[length];
+        int depth = buffer.getInt(readPos + 4);
+        buffer.position(readPos + 8);
+        buffer.get(url);
+        readPos += 8 + length;
+        size--;
+        return new URLDepthPair(new String(url, StandardCharsets.UTF_8), depth);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Writes the read and write positions; the segment files hold the data. */
+    public void writeState(DataOutputStream out) throws IOException {
+        writeBuffer.force();
+        out.writeInt(readSegment);
+        out.writeInt(readPos);
+        out.writeInt(writeSegment);
+        out.writeInt(writePos);
+        out.writeLong(size);
+    }
+
+    /** Reopens the spill in the state saved by {@link #writeState}. */
+    public static FrontierSpill readState(File dir, DataInputStream in) throws IOException {
+        return new FrontierSpill(dir, in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+    }
+
+    /** Deletes the segments that were completely read before the last saved state. */
+    public void releaseConsumed(int upToSegment) {
+        for (; firstKept < upToSegment; firstKept++)
+            segmentFile(firstKept).delete();
+    }
+
+    public int getReadSegment() {
+        return readSegment;
+    }
+
+    private MappedByteBuffer readBuffer() throws IOException {
+        if (readSegment == writeSegment)
+            return writeBuffer;
+        if (readBuffer == null)
+            readBuffer = map(readSegment);
+        return readBuffer;
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw")) {
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        }
+    }
+
+    private File segmentFile(int segment) {
+        return new File(dir, String.format("frontier-%06d.seg", segment));
+    }
+}
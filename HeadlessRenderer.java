@@ -0,0 +1,182 @@
+package com.company;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a fractal to a PNG file without a display, at sizes far beyond what
+ * fits in memory as one image. The image is cut into horizontal strips that
+ * worker threads compute, color and compress in parallel; the main thread
+ * writes the finished strips in order to a PngWriter. Only a window of strips
+ * is in flight at a time, so memory stays bounded by a few strips whatever
+ * the image size. Progress and throughput are printed as it goes. The strips
+ * run in a ForkJoinPool of the given number of threads, so the subdivision
+ * tasks they fork stay on those threads too.
+ *
+ * The view is given by its center and width in the plane; by default it is
+ * the initial range of the fractal. Subdivision only applies to fractals that
+ * are safe for it (see FractalGenerator.isSubdivisionSafe).
+ *
+ * usage: java com.company.HeadlessRenderer [fractal=mandelbrot|tricorn|burningship] [width=4096] [height=4096]
+ *        [x=center] [y=center] [scale=view width] [strip=32] [threads=N] [window=2*threads] [level=1]
+ *        [subdivide=true] [out=fractal.png]
+ */
+public class HeadlessRenderer {
+    public static final long PROGRESS_INTERVAL = 2000;
+
+    String fractalName = "mandelbrot";
+    int width = 4096;
+    int height = 4096;
+    Double centerX;
+    Double centerY;
+    Double scale;
+    int strip = 32;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int window;
+    int level = 1;
+    boolean subdivide = true;
+    File out = new File("fractal.png");
+
+    public static void main(String[] args) throws Exception {
+        HeadlessRenderer renderer = new HeadlessRenderer();
+        try {
+            renderer.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("usage: java com.company.HeadlessRenderer [fractal=mandelbrot|tricorn|burningship] [width=N] [height=N]"
+                    + " [x=center] [y=center] [scale=view width] [strip=rows] [threads=N] [window=strips] [level=-1..9]"
+                    + " [subdivide=true|false] [out=file.png]");
+            return;
+        }
+        renderer.run();
+    }
+
+    void parse(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq == -1)
+                throw new IllegalArgumentException("bad argument: " + arg);
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "fractal": fractalName = value; break;
+                case "width": width = Integer.parseInt(value); break;
+                case "height": height = Integer.parseInt(value); break;
+                case "x": centerX = Double.parseDouble(value); break;
+                case "y": centerY = Double.parseDouble(value); break;
+                case "scale": scale = Double.parseDouble(value); break;
+                case "strip": strip = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "window": window = Integer.parseInt(value); break;
+                case "level": level = Integer.parseInt(value); break;
+                case "subdivide": subdivide = Boolean.parseBoolean(value); break;
+                case "out": out = new File(value); break;
+                default: throw new IllegalArgumentException("unknown argument: " + key);
+            }
+        }
+        fractal();
+        if (width <= 0 || height <= 0 || strip <= 0 || threads <= 0)
+            throw new IllegalArgumentException("width, height, strip and threads must be positive");
+        if ((long) strip * width > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("strip too large for this width");
+        if (level < -1 || level > 9)
+            throw new IllegalArgumentException("level must be -1 to 9");
+        if (window <= 0)
+            window = 2 * threads;
+    }
+
+    FractalGenerator fractal() {
+        switch (fractalName) {
+            case "mandelbrot": return new Mandelbrot();
+            case "tricorn": return new Tricorn();
+            case "burningship": return new BurningShip();
+            default: throw new IllegalArgumentException("unknown fractal: " + fractalName);
+        }
+    }
+
+    void run() throws IOException, InterruptedException {
+        FractalGenerator fractal = fractal();
+        Rectangle2D.Double initial = new Rectangle2D.Double();
+        fractal.getInitialRange(initial);
+        double viewWidth = scale != null ? scale : initial.width;
+        double viewHeight = viewWidth * height / width;
+        double minX = (centerX != null ? centerX : initial.getCenterX()) - viewWidth / 2;
+        double minY = (centerY != null ? centerY : initial.getCenterY()) - viewHeight / 2;
+        double[] xs = new double[width];
+        for (int i = 0; i < width; i++)
+            xs[i] = FractalGenerator.getCoord(minX, minX + viewWidth, width, i);
+        int strips = (height + strip - 1) / strip;
+        System.out.printf("%s %dx%d, %d strips of %d rows, %d threads, window %d, to %s%n", fractalName, width, height,
+                strips, strip, threads, window, out);
+
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long lastReport = start;
+        try (OutputStream file = new BufferedOutputStream(new FileOutputStream(out), 1 << 16)) {
+            PngWriter png = new PngWriter(file, width, height);
+            ArrayDeque<Future<PngWriter.Segment>> pending = new ArrayDeque<Future<PngWriter.Segment>>();
+            int submitted = 0;
+            for (int written = 0; written < strips; written++) {
+                while (submitted < strips && pending.size() < window) {
+                    int first = submitted * strip;
+                    int rows = Math.min(strip, height - first);
+                    boolean last = submitted == strips - 1;
+                    pending.add(workers.submit(() -> renderStrip(fractal, xs, minY, viewHeight, first, rows, last)));
+                    submitted++;
+                }
+                PngWriter.Segment segment;
+                try {
+                    segment = pending.remove().get();
+                } catch (ExecutionException e) {
+                    throw new IOException("strip failed", e.getCause());
+                }
+                png.write(segment, Math.min(strip, height - written * strip));
+                long now = System.nanoTime();
+                if (now - lastReport >= PROGRESS_INTERVAL * 1_000_000L || written == strips - 1) {
+                    report(Math.min(height, (written + 1) * strip), now - start, png.getBytesWritten());
+                    lastReport = now;
+                }
+            }
+            png.finish();
+        } finally {
+            workers.shutdownNow();
+        }
+        System.out.printf("done: %s, %.1f MB%n", out, out.length() / 1e6);
+    }
+
+    /** Computes, colors and compresses the rows first..first+rows-1. */
+    PngWriter.Segment renderStrip(FractalGenerator fractal, double[] xs, double minY, double viewHeight,
+                                  int first, int rows, boolean last) {
+        double[] ys = new double[rows];
+        for (int j = 0; j < rows; j++)
+            ys[j] = FractalGenerator.getCoord(minY, minY + viewHeight, height, first + j);
+        int[] counts = new int[width * rows];
+        if (subdivide && fractal.isSubdivisionSafe()) {
+            MarianiSilver.fill(fractal, xs, ys, counts);
+        } else {
+            int[] line = new int[width];
+            for (int j = 0; j < rows; j++) {
+                fractal.numIterations(xs, ys[j], line, 0, width);
+                System.arraycopy(line, 0, counts, j * width, width);
+            }
+        }
+        Palette.HUE.color(counts, 0, counts, 0, counts.length);
+        return PngWriter.deflate(PngWriter.scanlines(counts, width, rows), level, last);
+    }
+
+    void report(int rows, long nanos, long bytes) {
+        double seconds = nanos / 1e9;
+        double pixels = (double) rows * width;
+        System.out.printf("%6d/%d rows (%5.1f%%)  %7.2f s  %7.2f Mpixel/s  %8.1f MB written  eta %.0f s%n", rows, height,
+                100.0 * rows / height, seconds, pixels / seconds / 1e6, bytes / 1e6,
+                seconds * (height - rows) / Math.max(1, rows));
+    }
+}
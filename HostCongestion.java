@@ -0,0 +1,49 @@
+/**
+ * Adaptive fetch settings of one host. The number of parallel fetches grows
+ * additively (about one more per window of successes) while latencies stay
+ * close to the fast end of what the host has shown, and is halved on every
+ * timeout or error. The socket timeout follows the observed p99 latency.
+ */
+public class HostCongestion {
+    public static final int INITIAL_TIMEOUT = 3000;
+    public static final int MIN_TIMEOUT = 250;
+    public static final int MAX_TIMEOUT = 30000;
+    public static final double TIMEOUT_FACTOR = 3;
+    public static final double HEALTHY_FACTOR = 2;
+    public static final long HEALTHY_SLACK = 10000;
+    public static final int MIN_SAMPLES = 8;
+
+    private final LatencyHistogram latency = new LatencyHistogram(3);
+    private final int maxLimit;
+    private double limit = 1;
+
+    public HostCongestion(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    /** Number of fetches the host may run at the same time now. */
+    public int getLimit() {
+        return Math.min(maxLimit, (int) limit);
+    }
+
+    public void onSuccess(long nanos) {
+        long micros = nanos / 1000;
+        boolean healthy = latency.getCount() < MIN_SAMPLES
+                || micros <= HEALTHY_FACTOR * latency.getPercentileMicros(25) + HEALTHY_SLACK;
+        latency.record(micros);
+        if (healthy)
+            limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    public void onFailure() {
+        limit = Math.max(1, limit / 2);
+    }
+
+    /** Socket timeout in milliseconds derived from the latency percentiles seen so far. */
+    public int getTimeout() {
+        if (latency.getCount() < MIN_SAMPLES)
+            return INITIAL_TIMEOUT;
+        long timeout = (long) (TIMEOUT_FACTOR * latency.getPercentileMicros(99) / 1000);
+        return (int) Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, timeout));
+    }
+}
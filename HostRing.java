@@ -0,0 +1,47 @@
+import java.util.Arrays;
+
+/**
+ * Consistent hashing of host names onto crawler processes. Every process gets
+ * a number of points on a 64-bit ring and a host belongs to the first point at
+ * or after its hash, so all URLs of a host are crawled, deduplicated and rate
+ * limited by one process, and adding a process moves only about 1/n of the hosts.
+ */
+public class HostRing {
+    public static final int DEFAULT_POINTS = 128;
+
+    private final long[] points;
+    private final int[] owners;
+
+    public HostRing(int nodes) {
+        this(nodes, DEFAULT_POINTS);
+    }
+
+    /** @param pointsPerNode virtual points per process; more points give a more even split */
+    public HostRing(int nodes, int pointsPerNode) {
+        if (nodes < 1 || pointsPerNode < 1)
+            throw new IllegalArgumentException("bad ring size");
+        int n = nodes * pointsPerNode;
+        long[] hashes = new long[n];
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) {
+            hashes[k] = URLFingerprint.mix(URLFingerprint.mix(k / pointsPerNode + 1) ^ k % pointsPerNode);
+            order[k] = k;
+        }
+        Arrays.sort(order, (x, y) -> Long.compare(hashes[x], hashes[y]));
+        points = new long[n];
+        owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / pointsPerNode;
+        }
+    }
+
+    /** Index of the process that owns the host. */
+    public int ownerOf(String host) {
+        long hash = URLFingerprint.of(host);
+        int at = Arrays.binarySearch(points, hash);
+        if (at < 0)
+            at = -at - 1;
+        return owners[at == points.length ? 0 : at];
+    }
+}
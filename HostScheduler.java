@@ -0,0 +1,230 @@
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Politeness-aware frontier. Every host gets its own FIFO queue, and hosts that
+ * may be fetched from are kept in a heap ordered by the moment they become ready
+ * again. A host is taken from the heap, gives away one link and goes back with a
+ * new ready time, so the workers rotate between hosts instead of piling onto one.
+ *
+ * A host's queue is full at <code>2 * maxPerHost</code> links (see
+ * {@link #isFull}); URLPool leaves further links of the host in the
+ * PriorityFrontier, so a slow host with many links cannot fill the window
+ * through which the scheduler is fed, and the other hosts keep getting links.
+ *
+ * How many fetches a host may run at once is decided by its HostCongestion,
+ * from 1 up to <code>maxPerHost</code>. Failed fetches can be retried a few
+ * times, each time after a longer pause of the host.
+ *
+ * The class is not thread safe: URLPool guards it with its own monitor.
+ */
+public class HostScheduler {
+    public static final long DEFAULT_HOST_DELAY = 250;
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+    public static final int MAX_RETRIES = 2;
+    public static final long RETRY_BACKOFF = 500;
+    public static final int MAX_TRACKED_HOSTS = 10000;
+
+    private static class HostQueue {
+        final String host;
+        final HostCongestion congestion;
+        final LinkedList<URLDepthPair> pending = new LinkedList<URLDepthPair>();
+        final LinkedList<URLDepthPair> running = new LinkedList<URLDepthPair>();
+        int active;
+        long readyAt;
+        long order;
+        boolean queued;
+
+        HostQueue(String host, HostCongestion congestion) {
+            this.host = host;
+            this.congestion = congestion;
+        }
+    }
+
+    private final long hostDelay;
+    private final int maxPerHost;
+    private final int hostWindow;
+    private final HashMap<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+    private final PriorityQueue<HostQueue> ready = new PriorityQueue<HostQueue>(
+            Comparator.<HostQueue>comparingLong(q -> q.readyAt).thenComparingLong(q -> q.order));
+    private final LinkedHashMap<String, HostCongestion> congestion =
+            new LinkedHashMap<String, HostCongestion>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, HostCongestion> eldest) {
+                    return size() > MAX_TRACKED_HOSTS;
+                }
+            };
+    private long order;
+    private int size;
+    private int active;
+
+    public HostScheduler() {
+        this(DEFAULT_HOST_DELAY, DEFAULT_MAX_PER_HOST);
+    }
+
+    /**
+     * @param hostDelay minimum time in milliseconds between two fetches started on one host
+     * @param maxPerHost maximum number of fetches running on one host at the same time
+     */
+    public HostScheduler(long hostDelay, int maxPerHost) {
+        if (hostDelay < 0 || maxPerHost < 1)
+            throw new IllegalArgumentException("bad politeness settings");
+        this.hostDelay = hostDelay;
+        this.maxPerHost = maxPerHost;
+        this.hostWindow = 2 * maxPerHost;
+    }
+
+    public void add(URLDepthPair pair) {
+        String host = hostOf(pair);
+        HostQueue queue = hosts.get(host);
+        if (queue == null) {
+            queue = new HostQueue(host, congestionOf(host));
+            hosts.put(host, queue);
+        }
+        queue.pending.add(pair);
+        size++;
+        schedule(queue);
+    }
+
+    /** Whether the queue of the link's host already has as many links as it may wait with. */
+    public boolean isFull(URLDepthPair pair) {
+        HostQueue queue = hosts.get(hostOf(pair));
+        return queue != null && queue.pending.size() >= hostWindow;
+    }
+
+    /**
+     * Returns the next link whose host is ready at the time <code>now</code>,
+     * or <code>null</code> if every host with pending links is still resting.
+     * The caller must hand the link back through {@link #release} when the fetch is over.
+     */
+    public URLDepthPair poll(long now) {
+        HostQueue queue = ready.peek();
+        if (queue == null || queue.readyAt > now)
+            return null;
+        ready.poll();
+        queue.queued = false;
+        URLDepthPair pair = queue.pending.removeFirst();
+        size--;
+        queue.running.add(pair);
+        queue.active++;
+        active++;
+        queue.readyAt = now + hostDelay;
+        schedule(queue);
+        return pair;
+    }
+
+    /** Hands back a link without telling anything about how the fetch went. */
+    public void release(URLDepthPair pair) {
+        HostQueue queue = hosts.get(hostOf(pair));
+        if (queue != null && queue.running.remove(pair))
+            finish(queue);
+    }
+
+    /** Hands back a fetched link; the latency feeds the host's concurrency and timeout. */
+    public void complete(URLDepthPair pair, long nanos) {
+        HostQueue queue = hosts.get(hostOf(pair));
+        if (queue == null || !queue.running.remove(pair))
+            return;
+        queue.congestion.onSuccess(nanos);
+        finish(queue);
+    }
+
+    /**
+     * Hands back a link whose fetch failed and cuts the host's concurrency.
+     * If <code>retry</code> is set and the link has retries left, it goes back
+     * to the front of its host queue and the host rests for a backoff that doubles
+     * with every attempt.
+     * @return whether the link was queued again
+     */
+    public boolean fail(URLDepthPair pair, boolean retry, long now) {
+        HostQueue queue = hosts.get(hostOf(pair));
+        if (queue == null || !queue.running.remove(pair))
+            return false;
+        queue.congestion.onFailure();
+        boolean again = retry && pair.attempts < MAX_RETRIES;
+        if (again) {
+            pair.attempts++;
+            queue.pending.addFirst(pair);
+            size++;
+            if (queue.queued) {
+                ready.remove(queue);
+                queue.queued = false;
+            }
+            queue.readyAt = Math.max(queue.readyAt, now + (RETRY_BACKOFF << (pair.attempts - 1)));
+        }
+        finish(queue);
+        return again;
+    }
+
+    /** Socket timeout in milliseconds for a fetch from the link's host. */
+    public int timeoutFor(URLDepthPair pair) {
+        HostQueue queue = hosts.get(hostOf(pair));
+        return (queue != null ? queue.congestion : congestionOf(hostOf(pair))).getTimeout();
+    }
+
+    /** Time at which the next host becomes ready, or Long.MAX_VALUE if none is waiting. */
+    public long nextReadyTime() {
+        HostQueue queue = ready.peek();
+        return queue == null ? Long.MAX_VALUE : queue.readyAt;
+    }
+
+    /** Number of links waiting to be fetched. */
+    public int size() {
+        return size;
+    }
+
+    /** Number of links handed out and not released yet. */
+    public int activeCount() {
+        return active;
+    }
+
+    public int hostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * Copies every link the scheduler knows about, running ones first, into the list.
+     * Used for checkpoints: after a restart the running links have to be fetched again.
+     */
+    public void snapshot(List<URLDepthPair> into) {
+        for (HostQueue queue : hosts.values())
+            into.addAll(queue.running);
+        for (HostQueue queue : hosts.values())
+            into.addAll(queue.pending);
+    }
+
+    private void finish(HostQueue queue) {
+        queue.active--;
+        active--;
+        if (queue.active == 0 && queue.pending.isEmpty())
+            hosts.remove(queue.host);
+        else
+            schedule(queue);
+    }
+
+    private HostCongestion congestionOf(String host) {
+        HostCongestion hostCongestion = congestion.get(host);
+        if (hostCongestion == null) {
+            hostCongestion = new HostCongestion(maxPerHost);
+            congestion.put(host, hostCongestion);
+        }
+        return hostCongestion;
+    }
+
+    private void schedule(HostQueue queue) {
+        if (!queue.queued && !queue.pending.isEmpty() && queue.active < queue.congestion.getLimit()) {
+            queue.order = order++;
+            queue.queued = true;
+            ready.add(queue);
+        }
+    }
+
+    private static String hostOf(URLDepthPair pair) {
+        return pair.getHost();
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Status line, headers and decoded body of an HTTP/1.1 response read from a
+ * socket. The body stream undoes chunked framing and gzip or deflate content
+ * coding on the fly, so the caller reads the page text without any full-body
+ * buffer in between.
+ */
+public class HttpResponse {
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final int status;
+    private final HashMap<String, String> headers = new HashMap<String, String>();
+    private InputStream body;
+
+    private HttpResponse(int status) {
+        this.status = status;
+    }
+
+    /** Reads the status line and headers; the stream is left at the start of the body. */
+    public static HttpResponse read(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        if (statusLine == null)
+            throw new EOFException("no response");
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/"))
+            throw new IOException("bad status line: " + statusLine);
+        HttpResponse response;
+        try {
+            response = new HttpResponse(Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IOException("bad status line: " + statusLine);
+        }
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                response.headers.merge(line.substring(0, colon).trim().toLowerCase(),
+                        line.substring(colon + 1).trim(), (a, b) -> a + ", " + b);
+        }
+        response.body = response.decode(in);
+        return response;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /** Returns the header value, or <code>null</code>; names are case-insensitive. */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    /** Decoded body bytes. */
+    public InputStream getBody() {
+        return body;
+    }
+
+    /** Decoded body as text in the charset named by Content-Type, UTF-8 by default. */
+    public BufferedReader getReader() {
+        return new BufferedReader(new InputStreamReader(body, charset()));
+    }
+
+    private Charset charset() {
+        String type = getHeader("content-type");
+        if (type != null) {
+            int at = type.toLowerCase().indexOf("charset=");
+            if (at != -1) {
+                String name = type.substring(at + 8).split(";")[0].replace("\"", "").trim();
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException e) {
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private InputStream decode(InputStream in) throws IOException {
+        InputStream framed;
+        String transfer = getHeader("transfer-encoding");
+        String length = getHeader("content-length");
+        if (status == 204 || status == 304 || status / 100 == 1)
+            framed = new LimitedInputStream(in, 0);
+        else if (transfer != null && transfer.toLowerCase().contains("chunked"))
+            framed = new ChunkedInputStream(in);
+        else if (length != null)
+            framed = new LimitedInputStream(in, parseLength(length));
+        else
+            framed = in;
+
+        String coding = getHeader("content-encoding");
+        if (coding == null)
+            return framed;
+        coding = coding.trim().toLowerCase();
+        if (coding.equals("gzip") || coding.equals("x-gzip"))
+            return new GZIPInputStream(framed, 8192);
+        if (coding.equals("deflate"))
+            return inflate(framed);
+        if (coding.equals("identity"))
+            return framed;
+        throw new IOException("unsupported content encoding: " + coding);
+    }
+
+    private static long parseLength(String length) throws IOException {
+        try {
+            return Long.parseLong(length.split(",")[0].trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("bad content length: " + length);
+        }
+    }
+
+    /** "deflate" is meant to be zlib-wrapped, but some servers send a raw stream. */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        int b0 = pushback.read();
+        int b1 = pushback.read();
+        if (b1 != -1)
+            pushback.unread(b1);
+        if (b0 != -1)
+            pushback.unread(b0);
+        boolean zlib = b0 != -1 && b1 != -1 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib), 8192);
+    }
+
+    /** Reads one header line in ISO-8859-1 without the line terminator. */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int end = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, end, StandardCharsets.ISO_8859_1);
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /** Body with a Content-Length: ends after that many bytes. */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long left;
+
+        LimitedInputStream(InputStream in, long length) {
+            super(in);
+            left = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (left <= 0)
+                return -1;
+            int b = in.read();
+            if (b != -1)
+                left--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (left <= 0)
+                return -1;
+            int n = in.read(buf, off, (int) Math.min(len, left));
+            if (n > 0)
+                left -= n;
+            return n;
+        }
+    }
+
+    /** Body with Transfer-Encoding: chunked. */
+    private static class ChunkedInputStream extends FilterInputStream {
+        private long left;
+        private boolean done;
+
+        ChunkedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk())
+                return -1;
+            int b = in.read();
+            if (b == -1)
+                throw new EOFException("truncated chunk");
+            left--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!nextChunk())
+                return -1;
+            int n = in.read(buf, off, (int) Math.min(len, left));
+            if (n == -1)
+                throw new EOFException("truncated chunk");
+            left -= n;
+            return n;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (done)
+                return false;
+            if (left > 0)
+                return true;
+            String line = readLine(in);
+            if (line != null && line.isEmpty())
+                line = readLine(in);
+            if (line == null)
+                throw new EOFException("missing chunk size");
+            int semicolon = line.indexOf(';');
+            try {
+                left = Long.parseLong((semicolon == -1 ? line : line.substring(0, semicolon)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("bad chunk size: " + line);
+            }
+            if (left == 0) {
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                }
+                done = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
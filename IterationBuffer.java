@@ -0,0 +1,78 @@
+package com.company;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The iteration counts of one view, row by row, kept apart from the image so
+ * that the colors can be changed without computing the fractal again.
+ * Coloring and the histogram are done in parallel on the common ForkJoinPool.
+ */
+public class IterationBuffer {
+    private final int width;
+    private final int height;
+    private final int[] counts;
+
+    public IterationBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        counts = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** The counts, pixel (x, y) at y * width + x; -1 is inside the set. */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /** Copies a block of counts, row by row, into the buffer. */
+    public void setTile(int x, int y, int width, int height, int[] tile) {
+        for (int j = 0; j < height; j++)
+            System.arraycopy(tile, j * width, counts, (y + j) * this.width + x, width);
+    }
+
+    /** Colors every count into rgb, which has the same layout. */
+    public void color(Palette palette, int[] rgb) {
+        IntStream.range(0, height).parallel()
+                .forEach(row -> palette.color(counts, row * width, rgb, row * width, width));
+    }
+
+    /**
+     * Number of pixels with each count from 0 to maxIterations; larger counts
+     * are added to the last one and points inside the set are left out.
+     */
+    public long[] histogram(int maxIterations) {
+        return Arrays.stream(counts).parallel().filter(count -> count >= 0).collect(
+                () -> new long[maxIterations + 1],
+                (histogram, count) -> histogram[Math.min(count, maxIterations)]++,
+                (a, b) -> {
+                    for (int n = 0; n < a.length; n++)
+                        a[n] += b[n];
+                });
+    }
+
+    /**
+     * Writes the raw counts: the width and the height, then every count, as
+     * big-endian ints.
+     */
+    public void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(width);
+            out.writeInt(height);
+            for (int count : counts)
+                out.writeInt(count);
+        }
+    }
+}
@@ -2,12 +2,19 @@ package com.company;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 public class JImageDisplay extends javax.swing.JComponent {
     private BufferedImage bufferedImage;
+    /** The pixels of the image, row by row; writes show after a repaint. */
+    private int[] pixels;
+    private int width;
 
     JImageDisplay(int width, int height){
         bufferedImage = new BufferedImage(width,height,bufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+        this.width = width;
         this.setPreferredSize(new Dimension(width,height));
     }
 
@@ -19,13 +26,32 @@ public class JImageDisplay extends javax.swing.JComponent {
     }
 
     public void clearImage(){
-        for(int i = 0; i < bufferedImage.getHeight(); i++){
-            for(int j = 0; j < bufferedImage.getWidth(); j++){
-                bufferedImage.setRGB(i,j,0);
-            }
-        }
+        Arrays.fill(pixels, 0);
+        repaint();
     }
     public void drawPixel(int x, int y, int rgbColor){
-        bufferedImage.setRGB(x,y,rgbColor);
+        pixels[y * width + x] = rgbColor;
+    }
+
+    /**
+     * The backing array of the image: pixel (x, y) is at y * width + x, as
+     * 0xRRGGBB. Writing to it is the fastest way to draw; call repaint after.
+     * Taking the array directly keeps Java2D from caching the image in video
+     * memory, which does not matter for an image that changes all the time.
+     */
+    public int[] getPixels(){
+        return pixels;
+    }
+
+    /** Copies length pixels into row y from x on, without repainting. */
+    public void drawRow(int x, int y, int[] rgb, int offset, int length){
+        System.arraycopy(rgb, offset, pixels, y * width + x, length);
+    }
+
+    /** Copies a block of pixels, row by row, into the image and repaints just that block. */
+    public void drawTile(int x, int y, int width, int height, int[] rgb){
+        for (int j = 0; j < height; j++)
+            System.arraycopy(rgb, j * width, pixels, (y + j) * this.width + x, width);
+        repaint(x,y,width,height);
     }
 }
@@ -0,0 +1,88 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in the HDR style: values below 2^subBits
+ * microseconds get a bucket each, larger ones are grouped by power of two and
+ * split into 2^subBits linear sub-buckets, so every recorded value is kept to a
+ * relative precision of 2^-subBits over the whole range of up to about a day.
+ */
+public class LatencyHistogram {
+    private static final int MAX_EXPONENT = 37;
+
+    private final int subBits;
+    private final AtomicLongArray counts;
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        this(5);
+    }
+
+    /** @param subBits binary digits kept of every value; 5 means about 3% precision */
+    public LatencyHistogram(int subBits) {
+        this.subBits = subBits;
+        counts = new AtomicLongArray((MAX_EXPONENT - subBits + 2) << subBits);
+    }
+
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    public void record(long micros) {
+        counts.incrementAndGet(index(Math.min(micros, (1L << (MAX_EXPONENT + 1)) - 1)));
+        total.increment();
+        sum.add(micros);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public double getMeanMicros() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /** Value in microseconds below which the given share (0..100) of the records lies. */
+    public long getPercentileMicros(double percentile) {
+        long count = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++)
+            count += snapshot[i] = counts.get(i);
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return highestValue(i);
+        }
+        return highestValue(snapshot.length - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        total.reset();
+        sum.reset();
+    }
+
+    private int index(long value) {
+        if (value < 1L << subBits)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - subBits)) & ((1 << subBits) - 1);
+        return ((exponent - subBits + 1) << subBits) + sub;
+    }
+
+    private long highestValue(int index) {
+        if (index < 1 << subBits)
+            return index;
+        int exponent = (index >>> subBits) + subBits - 1;
+        long sub = index & ((1 << subBits) - 1);
+        long low = (1L << exponent) | (sub << (exponent - subBits));
+        return low + (1L << (exponent - subBits)) - 1;
+    }
+}
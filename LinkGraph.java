@@ -0,0 +1,200 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Link graph of a crawl in compressed sparse row form. Every URL gets a dense
+ * id; the targets of node <em>u</em> are <code>targets[offsets[u]]</code> up to
+ * <code>targets[offsets[u + 1]]</code>, sorted and without repeats. Two int
+ * arrays hold all edges, so tens of millions of them fit in a few hundred MB.
+ */
+public class LinkGraph {
+    private static final int MAGIC = 0x43524c4b;
+    private static final int VERSION = 2;
+
+    private final String[] urls;
+    private final int[] offsets;
+    private final int[] targets;
+
+    private LinkGraph(String[] urls, int[] offsets, int[] targets) {
+        this.urls = urls;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /** Collects edges as pages are crawled; not thread safe. */
+    public static class Builder {
+        private final ArrayList<String> urls = new ArrayList<String>();
+        private long[] keys = new long[1 << 16];
+        private int[] ids = new int[1 << 16];
+        private int[] from = new int[1 << 16];
+        private int[] to = new int[1 << 16];
+        private int edges;
+
+        /** Returns the id of the URL, giving it the next free one if it is new. */
+        public int node(String url) {
+            long key = URLFingerprint.of(url);
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key)
+                    return ids[i];
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            ids[i] = urls.size();
+            urls.add(url);
+            if (urls.size() > keys.length / 2)
+                grow();
+            return urls.size() - 1;
+        }
+
+        public void edge(String from, String to) {
+            edge(node(from), node(to));
+        }
+
+        public void edge(int source, int target) {
+            if (edges == from.length) {
+                from = Arrays.copyOf(from, edges * 2);
+                to = Arrays.copyOf(to, edges * 2);
+            }
+            from[edges] = source;
+            to[edges] = target;
+            edges++;
+        }
+
+        public int nodeCount() {
+            return urls.size();
+        }
+
+        public int edgeCount() {
+            return edges;
+        }
+
+        /** Sorts the edges into rows, drops repeated ones and returns the graph. */
+        public LinkGraph build() {
+            int n = urls.size();
+            int[] offsets = new int[n + 1];
+            for (int e = 0; e < edges; e++)
+                offsets[from[e] + 1]++;
+            for (int u = 0; u < n; u++)
+                offsets[u + 1] += offsets[u];
+            int[] fill = Arrays.copyOf(offsets, n);
+            int[] targets = new int[edges];
+            for (int e = 0; e < edges; e++)
+                targets[fill[from[e]]++] = to[e];
+            int kept = 0;
+            int start = 0;
+            for (int u = 0; u < n; u++) {
+                int end = offsets[u + 1];
+                Arrays.sort(targets, start, end);
+                offsets[u] = kept;
+                for (int e = start; e < end; e++)
+                    if (e == start || targets[e] != targets[e - 1])
+                        targets[kept++] = targets[e];
+                start = end;
+            }
+            offsets[n] = kept;
+            return new LinkGraph(urls.toArray(new String[n]), offsets, Arrays.copyOf(targets, kept));
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new long[oldKeys.length * 2];
+            ids = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == 0)
+                    continue;
+                int i = (int) oldKeys[j] & mask;
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                ids[i] = oldIds[j];
+            }
+        }
+    }
+
+    public int nodeCount() {
+        return urls.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public String url(int node) {
+        return urls[node];
+    }
+
+    public int outDegree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /** Start of the node's row in {@link #getTargets}; the row ends where the next node's starts. */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /** The same graph with every edge reversed, i.e. the in-links of every node. */
+    public LinkGraph transpose() {
+        int n = urls.length;
+        int[] inOffsets = new int[n + 1];
+        for (int target : targets)
+            inOffsets[target + 1]++;
+        for (int v = 0; v < n; v++)
+            inOffsets[v + 1] += inOffsets[v];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        int[] sources = new int[targets.length];
+        for (int u = 0; u < n; u++)
+            for (int e = offsets[u]; e < offsets[u + 1]; e++)
+                sources[fill[targets[e]]++] = u;
+        return new LinkGraph(urls, inOffsets, sources);
+    }
+
+    public void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(urls.length);
+            out.writeInt(targets.length);
+            for (int offset : offsets)
+                out.writeInt(offset);
+            for (int target : targets)
+                out.writeInt(target);
+            for (String url : urls)
+                DataStrings.write(out, url);
+        }
+    }
+
+    public static LinkGraph readFrom(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(file + " is not a link graph");
+            int n = in.readInt();
+            int m = in.readInt();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i <= n; i++)
+                offsets[i] = in.readInt();
+            int[] targets = new int[m];
+            for (int i = 0; i < m; i++)
+                targets[i] = in.readInt();
+            String[] urls = new String[n];
+            for (int i = 0; i < n; i++)
+                urls[i] = DataStrings.read(in);
+            return new LinkGraph(urls, offsets, targets);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Builds the link graph of a crawl from its records: every link becomes a node
+ * and every out-link of a fetched page an edge.
+ */
+public class LinkGraphSink implements ResultSink {
+    private final LinkGraph.Builder builder = new LinkGraph.Builder();
+
+    @Override
+    public synchronized void accept(CrawlRecord record) {
+        int source = builder.node(record.url);
+        for (String link : record.outLinks)
+            builder.edge(source, builder.node(link));
+    }
+
+    /** The graph of the records seen so far. */
+    public synchronized LinkGraph build() {
+        return builder.build();
+    }
+}
@@ -0,0 +1,8 @@
+/** Splits the links of a distributed crawl between this process and the others. */
+public interface LinkRouter {
+    /** Whether the link belongs to this process. */
+    boolean isLocal(URLDepthPair pair);
+
+    /** Hands a link that belongs to another process over to it. */
+    void forward(URLDepthPair pair);
+}
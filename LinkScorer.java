@@ -0,0 +1,28 @@
+/**
+ * Priority of a waiting link; the frontier fetches higher scores first and
+ * drops the lowest ones when it is full. Links with equal scores keep their
+ * discovery order.
+ */
+public interface LinkScorer {
+    /** Shallow links first, i.e. the breadth-first order of the original crawler. */
+    LinkScorer BREADTH_FIRST = (pair, inLinks, hostLinks) -> -pair.getDepth();
+
+    /**
+     * @param inLinks number of times the link was found so far, at least 1
+     * @param hostLinks number of links of the same host that entered the frontier before this one
+     */
+    double score(URLDepthPair pair, int inLinks, int hostLinks);
+
+    /**
+     * Weighs popular links up and deep links and links of hosts that already
+     * gave many links down: <code>inLink * ln(1 + inLinks) - depth * depth
+     * - host * ln(1 + hostLinks)</code>.
+     */
+    static LinkScorer weighted(double depth, double inLink, double host) {
+        return (pair, inLinks, hostLinks) ->
+                inLink * Math.log1p(inLinks) - depth * pair.getDepth() - host * Math.log1p(hostLinks);
+    }
+
+    /** The weights used by CrawlBenchmark scorer=best. */
+    LinkScorer BEST_FIRST = weighted(1, 1, 0.5);
+}
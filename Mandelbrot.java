@@ -13,19 +13,69 @@ public class Mandelbrot extends FractalGenerator {
         range.width = 3;
     }
 
+    /** The Mandelbrot set and its escape-time bands are connected. */
+    @Override
+    public boolean isSubdivisionSafe() {
+        return true;
+    }
+
+    /**
+     * Whether the point lies in the main cardioid or the period-2 bulb, where
+     * the orbit never escapes, so the loop can be skipped.
+     */
+    public static boolean inMainBulbs(double x, double y) {
+        double xq = x - 0.25;
+        double q = xq * xq + y * y;
+        if (q * (q + xq) < 0.25 * (y * y))
+            return true;
+        double x1 = x + 1;
+        return x1 * x1 + y * y < 0.0625;
+    }
+
+    /**
+     * Escape time of the point. Points in the main bulbs return at once, and
+     * an orbit that comes back exactly to a value it had before is periodic in
+     * floating point, so it cannot escape any more; it is found by comparing
+     * with a value saved at every power of two (Brent's method). Both give the
+     * same result as running the loop to the limit.
+     */
     @Override
     public int numIterations(double x, double y) {
+        if (inMainBulbs(x, y)) return -1;
         int iteraion = 0;
         double x1 = 0;
         double y1 = 0;
+        double savedX = 0;
+        double savedY = 0;
+        int nextSave = 1;
         while (x1*x1 + y1*y1 < 4 && iteraion < MAX_ITERATIONS) {
             double temp1 = x1 * x1 - y1 * y1 + x;
             double temp2 = 2 * x1 * y1 + y;
             x1 = temp1;
             y1 = temp2;
             iteraion++;
+            if (x1 == savedX && y1 == savedY) return -1;
+            if (iteraion == nextSave) {
+                savedX = x1;
+                savedY = y1;
+                nextSave <<= 1;
+            }
         }
         if (iteraion >= MAX_ITERATIONS)return -1;
         return iteraion;
     }
+
+    @Override
+    public void numIterations(double[] xs, double y, int[] counts, int from, int to) {
+        if (VECTORIZED)
+            from = VectorKernel.iterate(VectorKernel.MANDELBROT, MAX_ITERATIONS, xs, y, counts, from, to);
+        super.numIterations(xs, y, counts, from, to);
+    }
+
+    @Override
+    public void numIterations(double[] xs, double[] ys, int[] counts, int from, int to) {
+        if (VECTORIZED)
+            from = VectorKernel.iterate(VectorKernel.MANDELBROT, MAX_ITERATIONS, xs, ys, counts, from, to);
+        super.numIterations(xs, ys, counts, from, to);
+    }
 }
@@ -0,0 +1,149 @@
+package com.company;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fills a block of iteration counts by Mariani-Silver subdivision. Only the
+ * border of a rectangle is computed; if every border point has the same count,
+ * the inside gets that count without being computed, since the escape-time
+ * bands of the set are connected. Otherwise the rectangle is cut in two along
+ * its longer side, the cut line is computed and both halves are handled the
+ * same way, in parallel while they are large. Small rectangles are computed
+ * point by point.
+ *
+ * Works for any FractalGenerator; for fractals whose bands are not connected
+ * a thin feature that misses a border can be lost, which the plain loop avoids.
+ * The renderers only use it for generators that are
+ * {@link FractalGenerator#isSubdivisionSafe safe}.
+ *
+ * The rows and columns are computed through scratch arrays of the block's
+ * size. A task hands its own to the half it computes itself; only a forked
+ * half gets new ones.
+ */
+public class MarianiSilver extends RecursiveAction {
+    public static final int MIN_SIZE = 4;
+    public static final int FORK_AREA = 64 * 64;
+    private static final long serialVersionUID = 1L;
+
+    private final FractalGenerator fractal;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] counts;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final int[] line;
+    private final double[] column;
+
+    /**
+     * Computes counts[j * xs.length + i] for the point xs[i] + i*ys[j] of
+     * every i and j.
+     */
+    public static void fill(FractalGenerator fractal, double[] xs, double[] ys, int[] counts) {
+        int w = xs.length;
+        int h = ys.length;
+        MarianiSilver block = new MarianiSilver(fractal, xs, ys, counts, 0, 0, w, h, null, null);
+        block.row(0, 0, w);
+        if (h > 1)
+            block.row(h - 1, 0, w);
+        block.column(0, 1, h - 1);
+        if (w > 1)
+            block.column(w - 1, 1, h - 1);
+        block.invoke();
+    }
+
+    /**
+     * A rectangle whose border is computed already; without scratch arrays
+     * (<code>null</code>) it makes its own.
+     */
+    private MarianiSilver(FractalGenerator fractal, double[] xs, double[] ys, int[] counts,
+                          int x, int y, int width, int height, int[] line, double[] column) {
+        this.fractal = fractal;
+        this.xs = xs;
+        this.ys = ys;
+        this.counts = counts;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.line = line != null ? line : new int[Math.max(xs.length, ys.length)];
+        this.column = column != null ? column : new double[ys.length];
+    }
+
+    @Override
+    protected void compute() {
+        if (width <= 2 || height <= 2)
+            return;
+        int stride = xs.length;
+        int uniform = uniformBorder();
+        if (uniform != Integer.MIN_VALUE) {
+            for (int j = y + 1; j < y + height - 1; j++)
+                Arrays.fill(counts, j * stride + x + 1, j * stride + x + width - 1, uniform);
+            return;
+        }
+        if (width <= MIN_SIZE || height <= MIN_SIZE) {
+            for (int j = y + 1; j < y + height - 1; j++)
+                row(j, x + 1, x + width - 1);
+            return;
+        }
+        boolean fork = width * height > FORK_AREA;
+        int[] secondLine = fork ? null : line;
+        double[] secondColumn = fork ? null : column;
+        MarianiSilver first;
+        MarianiSilver second;
+        if (width >= height) {
+            int middle = x + width / 2;
+            column(middle, y + 1, y + height - 1);
+            first = new MarianiSilver(fractal, xs, ys, counts, x, y, middle - x + 1, height, line, column);
+            second = new MarianiSilver(fractal, xs, ys, counts, middle, y, x + width - middle, height,
+                    secondLine, secondColumn);
+        } else {
+            int middle = y + height / 2;
+            row(middle, x + 1, x + width - 1);
+            first = new MarianiSilver(fractal, xs, ys, counts, x, y, width, middle - y + 1, line, column);
+            second = new MarianiSilver(fractal, xs, ys, counts, x, middle, width, y + height - middle,
+                    secondLine, secondColumn);
+        }
+        if (fork) {
+            invokeAll(first, second);
+        } else {
+            first.compute();
+            second.compute();
+        }
+    }
+
+    /** The count shared by the whole border, or Integer.MIN_VALUE if it differs. */
+    private int uniformBorder() {
+        int stride = xs.length;
+        int value = counts[y * stride + x];
+        int top = y * stride;
+        int bottom = (y + height - 1) * stride;
+        for (int i = x; i < x + width; i++)
+            if (counts[top + i] != value || counts[bottom + i] != value)
+                return Integer.MIN_VALUE;
+        for (int j = y + 1; j < y + height - 1; j++)
+            if (counts[j * stride + x] != value || counts[j * stride + x + width - 1] != value)
+                return Integer.MIN_VALUE;
+        return value;
+    }
+
+    /** Computes the points from..to-1 of row j with the batch method. */
+    private void row(int j, int from, int to) {
+        if (from >= to)
+            return;
+        fractal.numIterations(xs, ys[j], line, from, to);
+        System.arraycopy(line, from, counts, j * xs.length + from, to - from);
+    }
+
+    /** Computes the points from..to-1 of column i, also with the batch method. */
+    private void column(int i, int from, int to) {
+        if (from >= to)
+            return;
+        Arrays.fill(column, from, to, xs[i]);
+        fractal.numIterations(column, ys, line, from, to);
+        for (int j = from; j < to; j++)
+            counts[j * xs.length + i] = line[j];
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * PageRank by power iteration on a LinkGraph. The graph is transposed once, so
+ * every iteration pulls the rank of a node from its in-links and writes only
+ * its own slot: the nodes are split into ranges that fork-join tasks work on
+ * without locks or atomics. Rank of pages without out-links is spread evenly
+ * over all pages. Iteration stops when the ranks move less than the tolerance
+ * (L1 norm) from one iteration to the next.
+ *
+ * usage: java PageRank graph.bin [top]  -- prints the best pages of a saved graph
+ */
+public class PageRank {
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    private static final int CHUNK = 1 << 13;
+
+    /** Work on the nodes from..to-1 that returns a partial sum. */
+    private interface RangeSum {
+        double sum(int from, int to);
+    }
+
+    private static class RangeTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        final RangeSum work;
+        final int from;
+        final int to;
+
+        RangeTask(RangeSum work, int from, int to) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= CHUNK)
+                return work.sum(from, to);
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(work, from, middle);
+            left.fork();
+            double right = new RangeTask(work, middle, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    private final LinkGraph graph;
+    private final LinkGraph inLinks;
+    private double damping = DEFAULT_DAMPING;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private int iterations;
+    private double delta;
+
+    public PageRank(LinkGraph graph) {
+        this.graph = graph;
+        inLinks = graph.transpose();
+    }
+
+    public PageRank setDamping(double damping) {
+        this.damping = damping;
+        return this;
+    }
+
+    public PageRank setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public PageRank setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /** Iterations done by the last {@link #compute}. */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** L1 change of the ranks in the last iteration. */
+    public double getDelta() {
+        return delta;
+    }
+
+    public double[] compute() {
+        return compute(ForkJoinPool.commonPool());
+    }
+
+    /** Returns the rank of every node; the ranks add up to 1. */
+    public double[] compute(ForkJoinPool pool) {
+        int n = graph.nodeCount();
+        double[] rank = new double[n];
+        if (n == 0)
+            return rank;
+        double[] next = new double[n];
+        double[] share = new double[n];
+        int[] outOffsets = graph.getOffsets();
+        int[] inOffsets = inLinks.getOffsets();
+        int[] sources = inLinks.getTargets();
+        Arrays.fill(rank, 1.0 / n);
+        iterations = 0;
+        delta = Double.MAX_VALUE;
+        while (iterations < maxIterations && delta > tolerance) {
+            double[] current = rank;
+            double dangling = pool.invoke(new RangeTask((from, to) -> {
+                double lost = 0;
+                for (int u = from; u < to; u++) {
+                    int degree = outOffsets[u + 1] - outOffsets[u];
+                    if (degree == 0) {
+                        share[u] = 0;
+                        lost += current[u];
+                    } else {
+                        share[u] = current[u] / degree;
+                    }
+                }
+                return lost;
+            }, 0, n));
+            double base = (1 - damping) / n + damping * dangling / n;
+            double[] updated = next;
+            delta = pool.invoke(new RangeTask((from, to) -> {
+                double change = 0;
+                for (int v = from; v < to; v++) {
+                    double sum = 0;
+                    for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++)
+                        sum += share[sources[e]];
+                    updated[v] = base + damping * sum;
+                    change += Math.abs(updated[v] - current[v]);
+                }
+                return change;
+            }, 0, n));
+            next = rank;
+            rank = updated;
+            iterations++;
+        }
+        return rank;
+    }
+
+    /** Ids of the k nodes with the highest values, best first. */
+    public static int[] top(double[] values, int k) {
+        PriorityQueue<Integer> best = new PriorityQueue<Integer>((a, b) -> Double.compare(values[a], values[b]));
+        for (int i = 0; i < values.length; i++) {
+            if (best.size() < k) {
+                best.add(i);
+            } else if (k > 0 && values[i] > values[best.peek()]) {
+                best.poll();
+                best.add(i);
+            }
+        }
+        int[] order = new int[best.size()];
+        for (int i = order.length - 1; i >= 0; i--)
+            order[i] = best.poll();
+        return order;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("usage: java PageRank <graph file> [top]");
+            return;
+        }
+        LinkGraph graph = LinkGraph.readFrom(new File(args[0]));
+        long start = System.nanoTime();
+        PageRank pageRank = new PageRank(graph);
+        double[] rank = pageRank.compute();
+        System.out.printf("%d pages, %d links, %d iterations in %.2f s%n", graph.nodeCount(), graph.edgeCount(),
+                pageRank.getIterations(), (System.nanoTime() - start) / 1e9);
+        for (int node : top(rank, args.length > 1 ? Integer.parseInt(args[1]) : 10))
+            System.out.printf("%.6f  %s%n", rank[node], graph.url(node));
+    }
+}
@@ -0,0 +1,60 @@
+package com.company;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Lookup table from iteration counts to RGB colors, so that coloring a pixel
+ * is one array read instead of a color space conversion. Index 0 holds the
+ * color of -1 (inside the set), index n + 1 the color of n iterations; counts
+ * beyond the table get its last color.
+ */
+public class Palette {
+    /** The explorer's colors: black inside, a hue going round every 200 iterations outside. */
+    public static final Palette HUE = hue(Mandelbrot.MAX_ITERATIONS);
+
+    private final int[] colors;
+
+    /** @param colors the color of -1 first, then those of 0, 1, 2, ... iterations */
+    public Palette(int[] colors) {
+        this.colors = colors.clone();
+    }
+
+    public static Palette hue(int maxIterations) {
+        int[] colors = new int[maxIterations + 2];
+        for (int n = 0; n <= maxIterations; n++) {
+            float hue = 0.7f + (float) n / 200f;
+            colors[n + 1] = Color.HSBtoRGB(hue, 1f, 1f);
+        }
+        return new Palette(colors);
+    }
+
+    /**
+     * Histogram-equalized colors: a count gets the hue at the share of
+     * escaping pixels with at most that count, so each part of the hue range
+     * covers about as many pixels. The shares come from a parallel prefix sum
+     * of the histogram (see IterationBuffer.histogram).
+     */
+    public static Palette equalized(long[] histogram) {
+        long[] cumulative = histogram.clone();
+        Arrays.parallelPrefix(cumulative, Long::sum);
+        long total = cumulative.length == 0 ? 0 : cumulative[cumulative.length - 1];
+        int[] colors = new int[cumulative.length + 1];
+        for (int n = 0; n < cumulative.length; n++) {
+            float share = total == 0 ? 0 : (float) ((double) cumulative[n] / total);
+            colors[n + 1] = Color.HSBtoRGB(0.7f + 0.9f * share, 1f, 1f);
+        }
+        return new Palette(colors);
+    }
+
+    public int color(int iterations) {
+        return colors[Math.min(iterations + 1, colors.length - 1)];
+    }
+
+    /** Colors counts[from..from+length) into rgb[offset..offset+length). */
+    public void color(int[] counts, int from, int[] rgb, int offset, int length) {
+        int last = colors.length - 1;
+        for (int k = 0; k < length; k++)
+            rgb[offset + k] = colors[Math.min(counts[from + k] + 1, last)];
+    }
+}
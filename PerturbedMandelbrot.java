@@ -0,0 +1,151 @@
+package com.company;
+
+import java.awt.geom.Rectangle2D;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Mandelbrot set for deep zooms, where the pixel size is too small for the
+ * coordinates themselves to be held in doubles. The center of the view is kept
+ * as a BigDecimal and the orbit of that one point, the reference, is computed
+ * once at the precision the zoom needs. Every pixel is then iterated in doubles
+ * as the difference from the reference orbit (perturbation):
+ * <pre>
+ *     d(n+1) = 2 Z(n) d(n) + d(n)^2 + dc
+ * </pre>
+ * so the coordinates passed to {@link #numIterations(double, double)} are
+ * offsets from the center, which doubles hold well at any zoom.
+ *
+ * When the pixel orbit gets closer to zero than its difference from the
+ * reference is large, or the reference orbit ends because it escaped, the
+ * difference would lose its precision (a glitch). The pixel is then rebased:
+ * its full value becomes the difference to the start of the reference orbit,
+ * and the iteration goes on from there.
+ */
+public class PerturbedMandelbrot extends FractalGenerator {
+    /** Pixel size below which the plain double Mandelbrot runs out of precision. */
+    public static final double DEEP_PIXEL_SIZE = 1e-13;
+    /** Decimal digits kept beyond the magnitude of the view. */
+    public static final int GUARD_DIGITS = 20;
+
+    private final BigDecimal centerX;
+    private final BigDecimal centerY;
+    private final MathContext context;
+    private final int maxIterations;
+    private final double[] referenceX;
+    private final double[] referenceY;
+    private final int referenceLength;
+
+    /**
+     * Computes the reference orbit at (centerX, centerY) with enough digits
+     * for a view of about the given width.
+     */
+    public PerturbedMandelbrot(BigDecimal centerX, BigDecimal centerY, double width, int maxIterations) {
+        int digits = Math.max(0, (int) Math.ceil(-Math.log10(width))) + GUARD_DIGITS;
+        this.context = new MathContext(digits);
+        this.centerX = centerX.round(context);
+        this.centerY = centerY.round(context);
+        this.maxIterations = maxIterations;
+        referenceX = new double[maxIterations + 1];
+        referenceY = new double[maxIterations + 1];
+        BigDecimal four = BigDecimal.valueOf(4);
+        BigDecimal zx = BigDecimal.ZERO;
+        BigDecimal zy = BigDecimal.ZERO;
+        int n = 0;
+        while (n < maxIterations) {
+            BigDecimal xx = zx.multiply(zx, context);
+            BigDecimal yy = zy.multiply(zy, context);
+            if (xx.add(yy, context).compareTo(four) >= 0)
+                break;
+            BigDecimal xy = zx.multiply(zy, context);
+            zx = xx.subtract(yy, context).add(this.centerX, context);
+            zy = xy.add(xy, context).add(this.centerY, context);
+            n++;
+            referenceX[n] = zx.doubleValue();
+            referenceY[n] = zy.doubleValue();
+        }
+        referenceLength = n + 1;
+    }
+
+    /** Whether a view of this range on a screen of the given size needs the deep zoom. */
+    public static boolean isNeeded(Rectangle2D.Double range, int size) {
+        return range.width / size < DEEP_PIXEL_SIZE;
+    }
+
+    public BigDecimal getCenterX() {
+        return centerX;
+    }
+
+    public BigDecimal getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * A view centered at the given offset from this one, with the reference
+     * orbit computed again there.
+     */
+    public PerturbedMandelbrot recenter(double dx, double dy, double width) {
+        return new PerturbedMandelbrot(centerX.add(new BigDecimal(dx), context),
+                centerY.add(new BigDecimal(dy), context), width, maxIterations);
+    }
+
+    /** Sets the range to a square of the given width around the center, in offsets. */
+    public static void centerRange(Rectangle2D.Double range, double width) {
+        range.x = -width / 2;
+        range.y = -width / 2;
+        range.width = width;
+        range.height = width;
+    }
+
+    /** The coordinates are offsets from the center, so the center is part of the key. */
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList(getClass(), centerX, centerY, maxIterations);
+    }
+
+    /** It computes the Mandelbrot set, whose bands are connected. */
+    @Override
+    public boolean isSubdivisionSafe() {
+        return true;
+    }
+
+    /** The initial range of Mandelbrot, as offsets from the center. */
+    @Override
+    public void getInitialRange(Rectangle2D.Double range) {
+        new Mandelbrot().getInitialRange(range);
+        range.x -= centerX.doubleValue();
+        range.y -= centerY.doubleValue();
+    }
+
+    /** Escape time of the point center + (dcx, dcy), with the same limit and result as Mandelbrot. */
+    @Override
+    public int numIterations(double dcx, double dcy) {
+        double dx = 0;
+        double dy = 0;
+        int m = 0;
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            double zx = referenceX[m];
+            double zy = referenceY[m];
+            double nx = 2 * (zx * dx - zy * dy) + dx * dx - dy * dy + dcx;
+            double ny = 2 * (zx * dy + zy * dx) + 2 * dx * dy + dcy;
+            dx = nx;
+            dy = ny;
+            m++;
+            iteration++;
+            double x = referenceX[m] + dx;
+            double y = referenceY[m] + dy;
+            double r = x * x + y * y;
+            if (r >= 4)
+                break;
+            if (r < dx * dx + dy * dy || m == referenceLength - 1) {
+                dx = x;
+                dy = y;
+                m = 0;
+            }
+        }
+        if (iteration >= maxIterations) return -1;
+        return iteration;
+    }
+}
@@ -0,0 +1,181 @@
+package com.company;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming writer of 8-bit RGB PNG images, for images too large to hold in
+ * memory. The rows are given in strips, top to bottom. A strip is compressed
+ * on its own by {@link #deflate}, which can run on any thread, and the
+ * compressed strips are joined in order by {@link #write(Segment, int)}: each one
+ * ends on a byte boundary (a sync flush), so they form a single zlib stream,
+ * whose checksum is combined from those of the strips.
+ */
+public class PngWriter {
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    /** Largest IDAT chunk written; compressed data is cut into chunks of this size. */
+    public static final int CHUNK_SIZE = 1 << 16;
+    private static final int ADLER_BASE = 65521;
+
+    /** A compressed strip: deflate data and the checksum and length of the raw rows. */
+    public static class Segment {
+        final byte[] data;
+        final int length;
+        final long adler;
+        final long rawLength;
+
+        Segment(byte[] data, int length, long adler, long rawLength) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    private final DataOutputStream out;
+    private final int height;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength;
+    private long adler = 1;
+    private int rows;
+    private long bytesWritten;
+
+    /** Writes the signature and the header; the rows follow by write. */
+    public PngWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.height = height;
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(header);
+        fields.writeInt(width);
+        fields.writeInt(height);
+        fields.writeByte(8);
+        fields.writeByte(2);
+        fields.writeByte(0);
+        fields.writeByte(0);
+        fields.writeByte(0);
+        writeChunk("IHDR", header.toByteArray(), header.size());
+        chunk[0] = 0x78;
+        chunk[1] = 0x01;
+        chunkLength = 2;
+    }
+
+    /**
+     * Lays out rows of 0xRRGGBB pixels as PNG scanlines: a filter byte (none)
+     * and three bytes a pixel.
+     */
+    public static byte[] scanlines(int[] rgb, int width, int rows) {
+        byte[] raw = new byte[rows * (1 + 3 * width)];
+        int k = 0;
+        for (int j = 0; j < rows; j++) {
+            raw[k++] = 0;
+            for (int i = j * width; i < (j + 1) * width; i++) {
+                int c = rgb[i];
+                raw[k++] = (byte) (c >> 16);
+                raw[k++] = (byte) (c >> 8);
+                raw[k++] = (byte) c;
+            }
+        }
+        return raw;
+    }
+
+    /**
+     * Compresses scanlines into a segment. The last strip of the image must
+     * have last set, which ends the deflate stream.
+     */
+    public static Segment deflate(byte[] raw, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(raw);
+        if (last)
+            deflater.finish();
+        byte[] data = new byte[raw.length / 4 + 64];
+        int length = 0;
+        while (true) {
+            int space = data.length - length;
+            int n = deflater.deflate(data, length, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            length += n;
+            if (last ? deflater.finished() : n < space)
+                break;
+            if (length == data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+        }
+        deflater.end();
+        Adler32 checksum = new Adler32();
+        checksum.update(raw);
+        return new Segment(data, length, checksum.getValue(), raw.length);
+    }
+
+    /** Appends the next strip; segments must come in order. */
+    public void write(Segment segment, int rows) throws IOException {
+        write(segment.data, 0, segment.length);
+        adler = combine(adler, segment.adler, segment.rawLength);
+        this.rows += rows;
+    }
+
+    /** Writes the checksum, the last data chunk and the end chunk, and flushes. */
+    public void finish() throws IOException {
+        if (rows != height)
+            throw new IllegalStateException(rows + " of " + height + " rows written");
+        byte[] tail = {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+        write(tail, 0, tail.length);
+        if (chunkLength > 0)
+            writeChunk("IDAT", chunk, chunkLength);
+        writeChunk("IEND", chunk, 0);
+        out.flush();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void write(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, CHUNK_SIZE - chunkLength);
+            System.arraycopy(data, offset, chunk, chunkLength, n);
+            chunkLength += n;
+            offset += n;
+            length -= n;
+            if (chunkLength == CHUNK_SIZE) {
+                writeChunk("IDAT", chunk, chunkLength);
+                chunkLength = 0;
+            }
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+        bytesWritten += 12 + length;
+    }
+
+    /** Adler-32 of two blocks one after the other, from theirs (as adler32_combine in zlib). */
+    static long combine(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = rem * sum1 % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum2 >= 2L * ADLER_BASE)
+            sum2 -= 2L * ADLER_BASE;
+        if (sum2 >= ADLER_BASE)
+            sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+}
@@ -0,0 +1,15 @@
+import java.io.PrintStream;
+
+/** Prints every record as it arrives, in the format of the original crawler output. */
+public class PrintResultSink implements ResultSink {
+    private final PrintStream out;
+
+    public PrintResultSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void accept(CrawlRecord record) {
+        out.println("Depth : " + record.depth + "\tLink : " + record.url);
+    }
+}
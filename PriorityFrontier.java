@@ -0,0 +1,275 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Bounded best-first frontier. The links are kept in a min-max heap, so both
+ * the best link (to fetch next) and the worst one (to drop when the frontier
+ * is over its capacity) are found in logarithmic time. A link that is found
+ * again while it waits gets its in-link count raised and is scored again.
+ *
+ * A link whose host cannot take more links when it comes up in {@link #poll(Predicate)}
+ * is parked: it leaves the heap for a set of its host, best first, and is
+ * moved back by {@link #unpark} once the host has room. Parked links stay
+ * part of the frontier: they count toward the capacity, they are dropped
+ * like the others when they are the worst, and they are scored again when
+ * they are found again.
+ *
+ * The class is not thread safe: URLPool guards it with its own monitor.
+ */
+public class PriorityFrontier {
+    private static class Entry {
+        final URLDepthPair pair;
+        final long seq;
+        double score;
+        int inLinks = 1;
+        int hostLinks;
+        int index;
+        boolean parked;
+
+        Entry(URLDepthPair pair, long seq) {
+            this.pair = pair;
+            this.seq = seq;
+        }
+    }
+
+    private static final Comparator<Entry> BEST_FIRST = (a, b) -> a == b ? 0 : better(a, b) ? -1 : 1;
+
+    private final HashMap<Long, Entry> byFingerprint = new HashMap<Long, Entry>();
+    private final TreeSet<Entry> parked = new TreeSet<Entry>(BEST_FIRST);
+    private final HashMap<Integer, TreeSet<Entry>> parkedByHost = new HashMap<Integer, TreeSet<Entry>>();
+    private Entry[] heap = new Entry[64];
+    private int size;
+    private int[] hostLinks = new int[64];
+    private LinkScorer scorer;
+    private int capacity;
+    private long seq;
+
+    public PriorityFrontier(LinkScorer scorer, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.scorer = scorer;
+        this.capacity = capacity;
+    }
+
+    /** Number of waiting links, parked ones included. */
+    public int size() {
+        return size + parked.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Takes effect on the next {@link #add}, which drops links until the frontier fits. */
+    public void setCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a new link. If the frontier is then over its capacity, the lowest
+     * scored links (possibly the new one) are removed and put into <code>dropped</code>.
+     */
+    public void add(URLDepthPair pair, List<URLDepthPair> dropped) {
+        Entry entry = new Entry(pair, seq++);
+        int host = pair.getHostId();
+        if (host >= hostLinks.length)
+            hostLinks = Arrays.copyOf(hostLinks, Math.max(host + 1, hostLinks.length * 2));
+        entry.hostLinks = hostLinks[host]++;
+        entry.score = scorer.score(pair, entry.inLinks, entry.hostLinks);
+        byFingerprint.put(pair.getFingerprint(), entry);
+        insert(entry);
+        while (size() > capacity) {
+            Entry worst = size == 0 || !parked.isEmpty() && better(heap[0], parked.last()) ? parked.last() : heap[0];
+            if (worst.parked)
+                unlink(worst);
+            else
+                removeAt(worst.index);
+            byFingerprint.remove(worst.pair.getFingerprint());
+            dropped.add(worst.pair);
+        }
+    }
+
+    /**
+     * Counts one more link to a waiting URL and scores it again.
+     * @return whether the URL is waiting in this frontier
+     */
+    public boolean link(long fingerprint) {
+        Entry entry = byFingerprint.get(fingerprint);
+        if (entry == null)
+            return false;
+        entry.inLinks++;
+        double score = scorer.score(entry.pair, entry.inLinks, entry.hostLinks);
+        if (score != entry.score) {
+            if (entry.parked) {
+                unlink(entry);
+                entry.score = score;
+                park(entry);
+            } else {
+                removeAt(entry.index);
+                entry.score = score;
+                insert(entry);
+            }
+        }
+        return true;
+    }
+
+    /** Removes and returns the best link, or <code>null</code> if there is none but parked ones. */
+    public URLDepthPair poll() {
+        return poll(pair -> false);
+    }
+
+    /**
+     * Removes and returns the best link whose host is not full, or
+     * <code>null</code>. The better links of full hosts are parked on the way.
+     */
+    public URLDepthPair poll(Predicate<URLDepthPair> full) {
+        while (size > 0) {
+            int best = 0;
+            if (size > 1)
+                best = size > 2 && better(heap[2], heap[1]) ? 2 : 1;
+            Entry entry = removeAt(best);
+            if (!full.test(entry.pair)) {
+                byFingerprint.remove(entry.pair.getFingerprint());
+                return entry.pair;
+            }
+            park(entry);
+        }
+        return null;
+    }
+
+    /** Moves up to <code>count</code> of the best parked links of the host back into the heap. */
+    public void unpark(int host, int count) {
+        TreeSet<Entry> entries = parkedByHost.get(host);
+        if (entries == null)
+            return;
+        for (; count > 0 && !entries.isEmpty(); count--) {
+            Entry entry = entries.first();
+            unlink(entry);
+            insert(entry);
+        }
+    }
+
+    /** Copies the waiting links, parked ones included, in no particular order, into the list. */
+    public void snapshot(List<URLDepthPair> into) {
+        for (int i = 0; i < size; i++)
+            into.add(heap[i].pair);
+        for (Entry entry : parked)
+            into.add(entry.pair);
+    }
+
+    /** a comes before b: higher score, or the same score and found earlier. */
+    private static boolean better(Entry a, Entry b) {
+        return a.score > b.score || a.score == b.score && a.seq < b.seq;
+    }
+
+    private void insert(Entry entry) {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, size * 2);
+        entry.index = size;
+        heap[size++] = entry;
+        bubbleUp(entry.index);
+    }
+
+    private void park(Entry entry) {
+        entry.parked = true;
+        parked.add(entry);
+        parkedByHost.computeIfAbsent(entry.pair.getHostId(), host -> new TreeSet<Entry>(BEST_FIRST)).add(entry);
+    }
+
+    /** Takes a parked entry out of the parked sets. */
+    private void unlink(Entry entry) {
+        entry.parked = false;
+        parked.remove(entry);
+        TreeSet<Entry> entries = parkedByHost.get(entry.pair.getHostId());
+        entries.remove(entry);
+        if (entries.isEmpty())
+            parkedByHost.remove(entry.pair.getHostId());
+    }
+
+    private Entry removeAt(int i) {
+        Entry removed = heap[i];
+        Entry last = heap[--size];
+        heap[size] = null;
+        if (i < size) {
+            put(i, last);
+            trickleDown(i);
+            bubbleUp(last.index);
+        }
+        return removed;
+    }
+
+    private void put(int i, Entry entry) {
+        heap[i] = entry;
+        entry.index = i;
+    }
+
+    private void swap(int i, int j) {
+        Entry a = heap[i];
+        put(i, heap[j]);
+        put(j, a);
+    }
+
+    /** Even levels of the heap hold minima (worst links), odd levels maxima. */
+    private static boolean minLevel(int i) {
+        return (31 - Integer.numberOfLeadingZeros(i + 1) & 1) == 0;
+    }
+
+    private boolean ordered(int i, int j, boolean min) {
+        return min ? better(heap[j], heap[i]) : better(heap[i], heap[j]);
+    }
+
+    private void bubbleUp(int i) {
+        if (i == 0)
+            return;
+        int parent = (i - 1) / 2;
+        boolean min = minLevel(i);
+        if (ordered(parent, i, min)) {
+            swap(i, parent);
+            bubbleUp(parent, !min);
+        } else {
+            bubbleUp(i, min);
+        }
+    }
+
+    private void bubbleUp(int i, boolean min) {
+        while (i > 2) {
+            int grandparent = ((i - 1) / 2 - 1) / 2;
+            if (!ordered(i, grandparent, min))
+                return;
+            swap(i, grandparent);
+            i = grandparent;
+        }
+    }
+
+    private void trickleDown(int i) {
+        boolean min = minLevel(i);
+        while (2 * i + 1 < size) {
+            int m = 2 * i + 1;
+            for (int c = m + 1; c <= 2 * i + 2 && c < size; c++)
+                if (ordered(c, m, min))
+                    m = c;
+            for (int g = 4 * i + 3; g <= 4 * i + 6 && g < size; g++)
+                if (ordered(g, m, min))
+                    m = g;
+            if (!ordered(m, i, min))
+                return;
+            swap(m, i);
+            if (m <= 2 * i + 2)
+                return;
+            int parent = (m - 1) / 2;
+            if (ordered(parent, m, min))
+                swap(m, parent);
+            i = m;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a log written by RecordLogSink. Reading stops at the end of the file
+ * or at the first record that is cut short, has a length over
+ * RecordLogSink.MAX_RECORD or fails its checksum.
+ *
+ * usage: java RecordLogReader crawl.log  -- prints depth, status and URL of every record
+ */
+public class RecordLogReader implements AutoCloseable {
+    private final DataInputStream in;
+    private final CRC32 crc = new CRC32();
+    /** Bytes of the file not read yet. */
+    private long remaining;
+
+    public RecordLogReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        remaining = file.length() - 8;
+        if (in.readInt() != RecordLogSink.MAGIC || in.readInt() != RecordLogSink.VERSION) {
+            in.close();
+            throw new IOException(file + " is not a crawl record log");
+        }
+    }
+
+    /** Returns the next record, or <code>null</code> at the end of the readable part of the log. */
+    public CrawlRecord next() throws IOException {
+        byte[] payload;
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > RecordLogSink.MAX_RECORD || length + 8L > remaining)
+                return null;
+            remaining -= length + 8L;
+            payload = new byte[length];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            if (in.readInt() != (int) crc.getValue())
+                return null;
+        } catch (EOFException e) {
+            return null;
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        CrawlRecord.Kind kind = CrawlRecord.Kind.values()[record.readByte()];
+        int depth = record.readInt();
+        int status = record.readInt();
+        long timestamp = record.readLong();
+        long elapsed = record.readLong();
+        String url = DataStrings.read(record);
+        int links = record.readInt();
+        List<String> outLinks = new ArrayList<String>(links);
+        for (int i = 0; i < links; i++)
+            outLinks.add(DataStrings.read(record));
+        int bodyLength = record.readInt();
+        byte[] body = null;
+        if (bodyLength >= 0) {
+            body = new byte[bodyLength];
+            record.readFully(body);
+        }
+        return new CrawlRecord(url, depth, kind, status, timestamp, elapsed, outLinks, body);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("usage: java RecordLogReader <log file>");
+            return;
+        }
+        try (RecordLogReader reader = new RecordLogReader(new File(args[0]))) {
+            CrawlRecord record;
+            while ((record = reader.next()) != null)
+                System.out.println("Depth : " + record.depth + "\tStatus : " + record.status + " " + record.kind
+                        + "\tLinks : " + record.outLinks.size() + "\tLink : " + record.url);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Appends crawl records to a binary log, in the spirit of WARC: every record
+ * is its length, the payload and a CRC32 of the payload, so a log cut short by
+ * a crash is readable up to the last whole record (see RecordLogReader).
+ *
+ * Records go through a bounded queue to a writer thread that writes them in
+ * batches; when the disk falls behind, workers wait in {@link #accept} rather
+ * than pile records up on the heap. If the writer fails, waiting workers get
+ * its IOException instead of waiting for ever.
+ *
+ * Strings are written as DataStrings, an int length and UTF-8 bytes, so URLs
+ * over 64 KB fit. A record may be at most MAX_RECORD bytes long, so a reader
+ * can tell a corrupt length from a real one.
+ */
+public class RecordLogSink implements ResultSink, Runnable {
+    static final int MAGIC = 0x43524c47;
+    static final int VERSION = 2;
+    static final int MAX_RECORD = 256 << 20;
+    public static final int DEFAULT_QUEUE = 1024;
+    private static final int BATCH = 256;
+    /** How often a worker waiting for room in the queue looks whether the writer failed. */
+    private static final long OFFER_WAIT = 100;
+    private static final CrawlRecord END = new CrawlRecord("", 0, CrawlRecord.Kind.NOT_FETCHED, 0, 0, 0, null, null);
+
+    private final ArrayBlockingQueue<CrawlRecord> queue;
+    private final DataOutputStream out;
+    private final boolean bodies;
+    private final Thread writer;
+    private volatile IOException failure;
+    private long written;
+
+    public RecordLogSink(File file, boolean bodies) throws IOException {
+        this(file, bodies, DEFAULT_QUEUE);
+    }
+
+    public RecordLogSink(File file, boolean bodies, int queueSize) throws IOException {
+        boolean fresh = !file.exists() || file.length() == 0;
+        if (!fresh) {
+            try (RandomAccessFile existing = new RandomAccessFile(file, "r")) {
+                if (existing.readInt() != MAGIC || existing.readInt() != VERSION)
+                    throw new IOException(file + " is not a crawl record log of version " + VERSION);
+            }
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+        if (fresh) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        this.bodies = bodies;
+        queue = new ArrayBlockingQueue<CrawlRecord>(queueSize);
+        writer = new Thread(this, "record-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public boolean wantsBody() {
+        return bodies;
+    }
+
+    @Override
+    public void accept(CrawlRecord record) throws IOException {
+        enqueue(record);
+    }
+
+    private void enqueue(CrawlRecord record) throws IOException {
+        try {
+            while (true) {
+                if (failure != null)
+                    throw failure;
+                if (queue.offer(record, OFFER_WAIT, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while queueing a record");
+        }
+    }
+
+    /** Number of records written to the file so far. */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    @Override
+    public void run() {
+        ArrayList<CrawlRecord> batch = new ArrayList<CrawlRecord>(BATCH);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+        DataOutputStream payload = new DataOutputStream(buffer);
+        CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH - 1);
+                boolean end = false;
+                for (CrawlRecord record : batch) {
+                    if (record == END) {
+                        end = true;
+                        break;
+                    }
+                    buffer.reset();
+                    write(payload, record);
+                    if (buffer.size() > MAX_RECORD)
+                        throw new IOException("record of " + record.url + " is longer than " + MAX_RECORD + " bytes");
+                    crc.reset();
+                    crc.update(buffer.toByteArray(), 0, buffer.size());
+                    out.writeInt(buffer.size());
+                    buffer.writeTo(out);
+                    out.writeInt((int) crc.getValue());
+                }
+                synchronized (this) {
+                    written += end ? batch.indexOf(END) : batch.size();
+                }
+                batch.clear();
+                if (end || queue.isEmpty())
+                    out.flush();
+                if (end)
+                    return;
+            }
+        } catch (IOException e) {
+            failure = e;
+            queue.clear();
+        } catch (InterruptedException e) {
+            failure = new IOException("record writer interrupted");
+        }
+    }
+
+    private void write(DataOutputStream payload, CrawlRecord record) throws IOException {
+        payload.writeByte(record.kind.ordinal());
+        payload.writeInt(record.depth);
+        payload.writeInt(record.status);
+        payload.writeLong(record.timestamp);
+        payload.writeLong(record.elapsedMicros);
+        DataStrings.write(payload, record.url);
+        payload.writeInt(record.outLinks.size());
+        for (String link : record.outLinks)
+            DataStrings.write(payload, link);
+        if (record.body == null || !bodies) {
+            payload.writeInt(-1);
+        } else {
+            payload.writeInt(record.body.length);
+            payload.write(record.body);
+        }
+        payload.flush();
+    }
+
+    /** Writes the queued records and closes the file. */
+    @Override
+    public void close() throws IOException {
+        if (writer.isAlive() && failure == null) {
+            try {
+                enqueue(END);
+                writer.join();
+            } catch (IOException e) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        out.close();
+        if (failure != null)
+            throw failure;
+    }
+}
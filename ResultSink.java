@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/** Receives crawl records as pages complete, so the crawler never keeps them. */
+public interface ResultSink extends AutoCloseable {
+    /** Drops every record. */
+    ResultSink NONE = record -> {
+    };
+
+    void accept(CrawlRecord record) throws IOException;
+
+    /** Whether records should carry the page text. */
+    default boolean wantsBody() {
+        return false;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Loopback HTTP server that serves a synthetic web for crawler benchmarks.
+ * Page <em>i</em> lives on host <code>host(i % hosts).test</code> at path
+ * <code>/p/i</code> and links to <code>fanOut</code> other pages chosen by a
+ * seeded hash, so the same settings always give the same link graph. Every
+ * response can be delayed, and the first <code>slowHosts</code> hosts get an
+ * extra delay, and a share of responses can fail with 503. A share of the
+ * pages can be mirrors that serve the exact text of another page. Pages carry
+ * an ETag and are answered with 304 when the request names it. The host names only exist for a DnsCache pinned to 127.0.0.1.
+ */
+public class SyntheticWebServer implements Runnable {
+
+    /** Shape of the synthetic web; the fields are public so a harness can fill them from arguments. */
+    public static class Settings {
+        public long seed = 42;
+        public int pages = 100000;
+        public int hosts = 16;
+        public int fanOut = 10;
+        public int pageSize = 8192;
+        public int latency = 5;
+        public int jitter = 5;
+        public int slowHosts = 2;
+        public int slowLatency = 200;
+        public boolean gzip = true;
+        public int errorPercent = 0;
+        public int mirrorPercent = 0;
+        public int handlers = 64;
+        /** Fixed port, so page URLs stay the same from run to run; 0 picks a free one. */
+        public int port = 0;
+    }
+
+    private final Settings settings;
+    private final ServerSocket serverSocket;
+    private final ExecutorService handlers;
+    private final Thread acceptor;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    public SyntheticWebServer(Settings settings) throws IOException {
+        this.settings = settings;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), settings.port), 1024);
+        handlers = Executors.newFixedThreadPool(settings.handlers, r -> {
+            Thread thread = new Thread(r, "synthetic-web");
+            thread.setDaemon(true);
+            return thread;
+        });
+        acceptor = new Thread(this, "synthetic-web-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public static String hostName(int host) {
+        return "host" + host + ".test";
+    }
+
+    public String pageUrl(int page) {
+        return "http://" + hostName(page % settings.hosts) + ":" + getPort() + "/p/" + page;
+    }
+
+    /** Points every host of the synthetic web at the loopback address. */
+    public void pinHosts(DnsCache dnsCache) {
+        for (int host = 0; host < settings.hosts; host++)
+            dnsCache.pin(hostName(host), InetAddress.getLoopbackAddress());
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+        handlers.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                handlers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    System.out.println("Synthetic web: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            String requestLine = HttpResponse.readLine(in);
+            if (requestLine == null)
+                return;
+            String host = "";
+            boolean acceptsGzip = false;
+            String ifNoneMatch = null;
+            String line;
+            while ((line = HttpResponse.readLine(in)) != null && !line.isEmpty()) {
+                String lower = line.toLowerCase();
+                if (lower.startsWith("host:"))
+                    host = lower.substring(5).trim();
+                else if (lower.startsWith("accept-encoding:"))
+                    acceptsGzip = lower.contains("gzip");
+                else if (lower.startsWith("if-none-match:"))
+                    ifNoneMatch = line.substring(14).trim();
+            }
+            requests.increment();
+            String[] parts = requestLine.split(" ");
+            int page = parts.length > 1 ? pageOf(parts[1]) : -1;
+            OutputStream out = s.getOutputStream();
+            if (page < 0 || !host.startsWith(hostName(page % settings.hosts))) {
+                write(out, "404 Not Found", new byte[0], false, null);
+                return;
+            }
+            sleep(page);
+            if (settings.errorPercent > 0
+                    && Math.floorMod(URLFingerprint.mix(settings.seed + requests.sum() * 0x9e3779b97f4a7c15L), 100) < settings.errorPercent) {
+                write(out, "503 Service Unavailable", new byte[0], false, null);
+                return;
+            }
+            String etag = etag(origin(page));
+            if (etag.equals(ifNoneMatch)) {
+                write(out, "304 Not Modified", new byte[0], false, etag);
+                return;
+            }
+            byte[] body = page(origin(page));
+            boolean gzip = settings.gzip && acceptsGzip;
+            if (gzip) {
+                ByteArrayOutputStream packed = new ByteArrayOutputStream(body.length / 4);
+                try (GZIPOutputStream zip = new GZIPOutputStream(packed)) {
+                    zip.write(body);
+                }
+                body = packed.toByteArray();
+            }
+            write(out, "200 OK", body, gzip, etag);
+        } catch (IOException e) {
+        }
+    }
+
+    private void write(OutputStream out, String status, byte[] body, boolean gzip, String etag) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: text/html; charset=utf-8\r\n"
+                + (gzip ? "Content-Encoding: gzip\r\n" : "")
+                + (etag != null ? "ETag: " + etag + "\r\n" : "")
+                + (status.startsWith("304") ? "" : "Content-Length: " + body.length + "\r\n")
+                + "Connection: close\r\n\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(headBytes);
+        out.write(body);
+        out.flush();
+        bytesSent.add(headBytes.length + body.length);
+    }
+
+    private static int pageOf(String path) {
+        if (!path.startsWith("/p/"))
+            return -1;
+        try {
+            return Integer.parseInt(path.substring(3));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void sleep(int page) {
+        long delay = settings.latency;
+        if (settings.jitter > 0)
+            delay += Math.floorMod(URLFingerprint.mix(settings.seed ^ page), settings.jitter + 1);
+        if (page % settings.hosts < settings.slowHosts)
+            delay += settings.slowLatency;
+        if (delay <= 0)
+            return;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Page text: one link per line, then filler up to the page size. */
+    byte[] page(int page) {
+        StringBuilder html = new StringBuilder(settings.pageSize + 256);
+        html.append("<html><head><title>Page ").append(page).append("</title></head><body>\n");
+        for (int k = 0; k < settings.fanOut; k++) {
+            int target = link(page, k);
+            html.append("<a href=\"").append(pageUrl(target)).append("\">page ").append(target).append("</a>\n");
+        }
+        long filler = URLFingerprint.mix(settings.seed * 31 + page);
+        while (html.length() < settings.pageSize) {
+            html.append("<p>lorem ").append(Long.toHexString(filler)).append(" ipsum</p>\n");
+            filler = URLFingerprint.mix(filler);
+        }
+        html.append("</body></html>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Entity tag of the page text; it only changes with the seed. */
+    String etag(int page) {
+        return "\"" + Long.toHexString(URLFingerprint.mix(settings.seed * 13 + page)) + "\"";
+    }
+
+    /** The page whose text a mirror serves; other pages serve their own text. */
+    int origin(int page) {
+        long h = URLFingerprint.mix(settings.seed * 17 + page);
+        if (Math.floorMod(h, 100) >= settings.mirrorPercent)
+            return page;
+        return (int) Math.floorMod(URLFingerprint.mix(h), (long) settings.pages);
+    }
+
+    int link(int page, int k) {
+        return (int) Math.floorMod(URLFingerprint.mix(settings.seed ^ ((long) page << 20) ^ k), (long) settings.pages);
+    }
+}
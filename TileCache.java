@@ -0,0 +1,248 @@
+package com.company;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Iteration counts of finished tiles, so that a view shown before, such as the
+ * start view after a reset, does not have to be computed again. Tiles are kept
+ * in memory up to a byte limit, the least recently used going first. With a
+ * spill file an evicted tile is written there instead of being dropped and is
+ * read back when it is asked for again; the file is deleted on close.
+ *
+ * The spill has its own byte limit, and its least recently used tiles are
+ * dropped beyond it. The place of a dropped tile is reused by the next tile of
+ * the same size, so the file stays within the limit plus one tile of each
+ * size. The index of the spill is kept in memory and counts toward the memory
+ * limit. After an I/O error the cache goes on without the spill and keeps
+ * the error for {@link #getSpillError}.
+ *
+ * Counts are kept rather than colors, so a different palette can use them.
+ */
+public class TileCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    public static final long DEFAULT_MAX_SPILL_BYTES = 1L << 30;
+    /** Bytes counted for a tile besides its counts: the key, the map entry and the array header. */
+    private static final int ENTRY_OVERHEAD = 128;
+    /** Bytes counted in memory for a spilled tile: the key, the map entry and its place in the file. */
+    private static final int SPILL_ENTRY_OVERHEAD = 128;
+
+    /** A tile of the pixel lattice of one zoom level, for one generator. */
+    public static final class Key {
+        private final Object fractal;
+        private final long pixelX;
+        private final long pixelY;
+        private final long column;
+        private final long row;
+
+        public Key(Object fractal, double pixelX, double pixelY, long column, long row) {
+            this.fractal = fractal;
+            this.pixelX = Double.doubleToLongBits(pixelX);
+            this.pixelY = Double.doubleToLongBits(pixelY);
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return column == key.column && row == key.row && pixelX == key.pixelX && pixelY == key.pixelY
+                    && fractal.equals(key.fractal);
+        }
+
+        @Override
+        public int hashCode() {
+            long h = column * 0x9e3779b97f4a7c15L + row;
+            h = h * 31 + pixelX;
+            h = h * 31 + pixelY;
+            return (int) (h ^ h >>> 32) * 31 + fractal.hashCode();
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, int[]> tiles = new LinkedHashMap<Key, int[]>(256, 0.75f, true);
+    private long bytes;
+    private final File spillFile;
+    private final long maxSpillBytes;
+    private RandomAccessFile spill;
+    private final LinkedHashMap<Key, long[]> spilled = new LinkedHashMap<Key, long[]>(256, 0.75f, true);
+    /** Places of dropped spilled tiles, by their number of counts. */
+    private final HashMap<Integer, ArrayDeque<Long>> free = new HashMap<Integer, ArrayDeque<Long>>();
+    private long spillBytes;
+    private long hits;
+    private long spillHits;
+    private long misses;
+    private IOException spillError;
+
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.spillFile = null;
+        this.maxSpillBytes = 0;
+    }
+
+    /** A cache that writes evicted tiles to the given file, up to DEFAULT_MAX_SPILL_BYTES. */
+    public TileCache(long maxBytes, File spillFile) throws IOException {
+        this(maxBytes, spillFile, DEFAULT_MAX_SPILL_BYTES);
+    }
+
+    /** A cache that writes evicted tiles to the given file, which is created or emptied. */
+    public TileCache(long maxBytes, File spillFile, long maxSpillBytes) throws IOException {
+        this.maxBytes = maxBytes;
+        this.spillFile = spillFile;
+        this.maxSpillBytes = maxSpillBytes;
+        spill = new RandomAccessFile(spillFile, "rw");
+        spill.setLength(0);
+    }
+
+    /** The counts of the tile, or null if they are not cached. The array must not be changed. */
+    public synchronized int[] get(Key key) {
+        int[] counts = tiles.get(key);
+        if (counts != null) {
+            hits++;
+            return counts;
+        }
+        long[] place = spilled.get(key);
+        if (place != null && spill != null) {
+            try {
+                counts = read(place[0], (int) place[1]);
+                spillHits++;
+                store(key, counts);
+                return counts;
+            } catch (IOException e) {
+                closeSpill(e);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(Key key, int[] counts) {
+        if (tiles.containsKey(key))
+            return;
+        store(key, counts);
+    }
+
+    private void store(Key key, int[] counts) {
+        tiles.put(key, counts);
+        bytes += size(counts);
+        Iterator<Map.Entry<Key, int[]>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Key, int[]> entry = eldest.next();
+            if (entry.getKey() == key)
+                break;
+            bytes -= size(entry.getValue());
+            eldest.remove();
+            if (spill != null && !spilled.containsKey(entry.getKey()))
+                write(entry.getKey(), entry.getValue());
+        }
+        Iterator<Map.Entry<Key, long[]>> eldestSpilled = spilled.entrySet().iterator();
+        while ((bytes > maxBytes || spillBytes > maxSpillBytes) && eldestSpilled.hasNext()) {
+            long[] place = eldestSpilled.next().getValue();
+            eldestSpilled.remove();
+            release(place);
+        }
+    }
+
+    private static long size(int[] counts) {
+        return 4L * counts.length + ENTRY_OVERHEAD;
+    }
+
+    /** Writes the tile to a free place of its size, or at the end of the file. */
+    private void write(Key key, int[] counts) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(4 * counts.length);
+            buffer.asIntBuffer().put(counts);
+            ArrayDeque<Long> places = free.get(counts.length);
+            long offset = places == null || places.isEmpty() ? spill.length() : places.pop();
+            spill.seek(offset);
+            spill.write(buffer.array());
+            spilled.put(key, new long[] {offset, counts.length});
+            spillBytes += 4L * counts.length;
+            bytes += SPILL_ENTRY_OVERHEAD;
+        } catch (IOException e) {
+            closeSpill(e);
+        }
+    }
+
+    /** Frees the place of a spilled tile that was dropped from the index. */
+    private void release(long[] place) {
+        free.computeIfAbsent((int) place[1], length -> new ArrayDeque<Long>()).push(place[0]);
+        spillBytes -= 4 * place[1];
+        bytes -= SPILL_ENTRY_OVERHEAD;
+    }
+
+    private int[] read(long offset, int length) throws IOException {
+        byte[] data = new byte[4 * length];
+        spill.seek(offset);
+        spill.readFully(data);
+        int[] counts = new int[length];
+        ByteBuffer.wrap(data).asIntBuffer().get(counts);
+        return counts;
+    }
+
+    /** Goes on without the spill file after an I/O error; the tiles in it are lost. */
+    private void closeSpill(IOException e) {
+        spillError = e;
+        close();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getSpillHits() {
+        return spillHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Bytes counted against the memory limit: the tiles in memory and the index of the spill. */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized int spilledSize() {
+        return spilled.size();
+    }
+
+    /** Bytes of the spilled tiles that are still in the index. */
+    public synchronized long getSpillBytes() {
+        return spillBytes;
+    }
+
+    /** The I/O error that closed the spill file, or <code>null</code>. */
+    public synchronized IOException getSpillError() {
+        return spillError;
+    }
+
+    /** Closes and deletes the spill file; the tiles in memory stay usable. */
+    public synchronized void close() {
+        if (spill == null)
+            return;
+        try {
+            spill.close();
+        } catch (IOException e) {
+        }
+        spill = null;
+        bytes -= (long) SPILL_ENTRY_OVERHEAD * spilled.size();
+        spilled.clear();
+        free.clear();
+        spillBytes = 0;
+        spillFile.delete();
+    }
+}
@@ -1,26 +1,59 @@
 import java.util.LinkedList;
-import java.net.MalformedURLException;
-import java.net.URL;
 
+/**
+ * A link and the depth at which it was found. The URL is parsed and normalized
+ * once, in the constructor, so host, path and fingerprint are plain field reads.
+ */
 public class URLDepthPair {
     public static final String URL_PREFIX = "http://";
 
-    public String URL;
+    public final CanonicalURL canonical;
+    public final String URL;
     public int depth;
+    int attempts;
 
-    public URLDepthPair (String URL, int depth){
-        this.URL=URL;
+    public URLDepthPair (CanonicalURL canonical, int depth){
+        this.canonical=canonical;
+        this.URL=canonical.toString();
         this.depth=depth;
     }
 
+    /** @throws IllegalArgumentException if the string is not an absolute http(s) URL */
+    public URLDepthPair (String URL, int depth){
+        this(parse(URL), depth);
+    }
+
+    /** Returns the pair, or <code>null</code> if the string is not an absolute http(s) URL. */
+    public static URLDepthPair create(String URL, int depth) {
+        CanonicalURL canonical = CanonicalURL.parse(URL);
+        return canonical == null ? null : new URLDepthPair(canonical, depth);
+    }
 
-    public String getHost() throws MalformedURLException {
-        URL host = new URL(URL);
-        return host.getHost();
+    private static CanonicalURL parse(String URL) {
+        CanonicalURL canonical = CanonicalURL.parse(URL);
+        if (canonical == null)
+            throw new IllegalArgumentException("not an http URL: " + URL);
+        return canonical;
+    }
+
+    public String getHost() {
+        return canonical.getHost();
+    }
+    public int getHostId() {
+        return canonical.getHostId();
+    }
+    /** Port to connect to; the crawler speaks plain HTTP, so 80 unless the URL names one. */
+    public int getPort() {
+        return canonical.getPort() == -1 ? 80 : canonical.getPort();
+    }
+    public String getAuthority() {
+        return canonical.getAuthority();
+    }
+    public String getPath() {
+        return canonical.getPath();
     }
-    public String getPath() throws MalformedURLException {
-        URL path = new URL(URL);
-        return path.getPath();
+    public long getFingerprint() {
+        return canonical.getFingerprint();
     }
     public int getDepth() {
         return depth;
@@ -32,8 +65,8 @@ public class URLDepthPair {
     public static boolean check(LinkedList<URLDepthPair> resultLink, URLDepthPair pair) {
         boolean isAlready = true;
         for (URLDepthPair c : resultLink)
-            if (c.getURL().equals(pair.getURL()))
+            if (c.canonical.equals(pair.canonical))
                 isAlready=false;
         return isAlready;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
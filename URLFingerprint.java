@@ -0,0 +1,36 @@
+/**
+ * 64-bit fingerprints of URLs. Two different URLs get the same fingerprint with
+ * a probability of about n*n/2^65, which is negligible even for 100M URLs, so the
+ * dedup structures keep fingerprints instead of the strings themselves.
+ */
+public class URLFingerprint {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private URLFingerprint() {
+    }
+
+    /** Returns a well mixed, never zero fingerprint of the string. */
+    public static long of(String url) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            h ^= c & 0xff;
+            h *= FNV_PRIME;
+            h ^= c >>> 8;
+            h *= FNV_PRIME;
+        }
+        h = mix(h ^ url.length());
+        return h == 0 ? 1 : h;
+    }
+
+    /** MurmurHash3 finalizer: spreads every input bit over the whole word. */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,48 +1,345 @@
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class URLPool {
-    LinkedList<URLDepthPair> findLink;
-    LinkedList<URLDepthPair> viewedLink;
+    public static final int DEFAULT_FRONTIER_CAPACITY = 1 << 18;
+    public static final int SCHEDULER_WINDOW = 256;
+
+    HostScheduler findLink;
+    PriorityFrontier frontier;
+    final List<URLDepthPair> dropped = new ArrayList<URLDepthPair>();
+    URLSeenFilter seenLink;
+    DnsCache dnsCache;
+    CrawlMetrics metrics;
+    ContentIndex contentIndex;
+    ResultSink resultSink = ResultSink.NONE;
+    ValidatorStore validators;
+    LinkRouter router;
+    boolean keepAlive;
+    boolean stopped;
+    FrontierSpill spill;
+    CrawlCheckpoint checkpoint;
+    final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
     int maxDepth;
     int cWait;
 
     public URLPool(int maxDepth) {
+        this(maxDepth, HostScheduler.DEFAULT_HOST_DELAY, HostScheduler.DEFAULT_MAX_PER_HOST);
+    }
+
+    public URLPool(int maxDepth, long hostDelay, int maxPerHost) {
+        this(maxDepth, hostDelay, maxPerHost, new URLSeenFilter(1 << 16));
+    }
+
+    public URLPool(int maxDepth, long hostDelay, int maxPerHost, URLSeenFilter seenLink) {
         this.maxDepth = maxDepth;
-        findLink = new LinkedList<URLDepthPair>();
-        viewedLink = new LinkedList<URLDepthPair>();
+        findLink = new HostScheduler(hostDelay, maxPerHost);
+        frontier = new PriorityFrontier(LinkScorer.BREADTH_FIRST, DEFAULT_FRONTIER_CAPACITY);
+        this.seenLink = seenLink;
+        dnsCache = new DnsCache();
+        metrics = new CrawlMetrics();
+        contentIndex = new ContentIndex(1 << 16);
         cWait = 0;
     }
 
+    /**
+     * Restores a pool from a checkpoint. Links that were being fetched when the
+     * checkpoint was taken are fetched again.
+     */
+    public static URLPool resume(File checkpointFile, File spillDir, int hotLimit, long hostDelay, int maxPerHost)
+            throws IOException {
+        CrawlCheckpoint.State state = CrawlCheckpoint.load(checkpointFile, spillDir);
+        URLPool pool = new URLPool(state.maxDepth, hostDelay, maxPerHost, state.seenLink);
+        pool.spill = state.spill;
+        if (state.spill != null)
+            pool.metrics.spilled(state.spill.size());
+        pool.frontier.setCapacity(hotLimit);
+        for (URLDepthPair pair : state.frontier)
+            pool.admit(pair);
+        return pool;
+    }
+
+    /**
+     * Keeps at most <code>hotLimit</code> waiting links in the priority frontier
+     * and sends the lowest scored ones to the spill instead of dropping them.
+     */
+    public synchronized void setSpill(FrontierSpill spill, int hotLimit) {
+        this.spill = spill;
+        frontier.setCapacity(hotLimit);
+    }
+
+    /**
+     * Orders the waiting links by the scorer, best first, and keeps at most
+     * <code>capacity</code> of them; the lowest scored ones go to the spill if
+     * there is one and are dropped otherwise. The default is breadth-first.
+     */
+    public synchronized void setFrontier(LinkScorer scorer, int capacity) {
+        ArrayList<URLDepthPair> waiting = new ArrayList<URLDepthPair>();
+        frontier.snapshot(waiting);
+        frontier = new PriorityFrontier(scorer, capacity);
+        for (URLDepthPair pair : waiting) {
+            metrics.frontierRemoved(pair.getDepth());
+            admit(pair);
+        }
+    }
+
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Fingerprints of the pages fetched so far, used to skip mirrored content. */
+    public ContentIndex getContentIndex() {
+        return contentIndex;
+    }
+
+    /** Where the records of finished links go; by default they are dropped. */
+    public synchronized void setResultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
+    }
+
+    public synchronized ResultSink getResultSink() {
+        return resultSink;
+    }
+
+    /** Turns on conditional requests against what an earlier crawl stored in the validators. */
+    public synchronized void setValidators(ValidatorStore validators) {
+        this.validators = validators;
+    }
+
+    /** The validator store of a recrawl, or <code>null</code>. */
+    public synchronized ValidatorStore getValidators() {
+        return validators;
+    }
+
+    /**
+     * Makes the pool one part of a distributed crawl: links that belong to
+     * another process are forwarded by the router instead of being queued, and
+     * {@link #getPair} waits for links from the other processes when the local
+     * frontier runs dry, until {@link #shutdown} is called.
+     */
+    public synchronized void setRouter(LinkRouter router) {
+        this.router = router;
+        keepAlive = router != null;
+    }
+
+    /** Stops handing out links; workers get <code>null</code> from getPair once their current fetch is over. */
+    public synchronized void shutdown() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /** Whether there is nothing left to fetch or being fetched, including the spill. */
+    public synchronized boolean isIdle() {
+        return findLink.size() == 0 && findLink.activeCount() == 0 && frontier.isEmpty()
+                && (spill == null || spill.isEmpty());
+    }
+
+    public DnsCache getDnsCache() {
+        return dnsCache;
+    }
+
+    public synchronized void setCheckpoint(CrawlCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Waits until some host is ready and returns its next link. The host
+     * scheduler is fed from the priority frontier and only holds the best
+     * {@link #SCHEDULER_WINDOW} links, so the order is best-first up to the
+     * politeness rules. A host with a full queue does not take up more room in
+     * the window: its further links are parked in the frontier, where they keep
+     * their place in the order, and come back as the host's queue drains. Returns
+     * <code>null</code> once the frontier is empty and no fetch is running,
+     * i.e. when the crawl is over, so the seed must be added before workers start.
+     * A distributed pool returns <code>null</code> only after {@link #shutdown}.
+     */
     public synchronized URLDepthPair getPair() {
-        while (findLink.size() == 0) {
+        while (true) {
+            refill();
+            long now = System.currentTimeMillis();
+            URLDepthPair nextPair = stopped ? null : findLink.poll(now);
+            if (nextPair != null) {
+                frontier.unpark(nextPair.getHostId(), 1);
+                metrics.frontierRemoved(nextPair.getDepth());
+                return nextPair;
+            }
+            if (stopped || findLink.size() == 0 && findLink.activeCount() == 0 && !keepAlive) {
+                notifyAll();
+                return null;
+            }
+            long readyAt = findLink.nextReadyTime();
             cWait++;
             try {
-                wait();
+                if (readyAt == Long.MAX_VALUE)
+                    wait();
+                else
+                    wait(Math.max(1, readyAt - now));
             } catch (InterruptedException e) {
                 System.out.println("Ignoring InterruptedException");
             }
             cWait--;
         }
-        URLDepthPair nextPair = findLink.removeFirst();
-        return nextPair;
     }
 
-    public synchronized void addPair(URLDepthPair pair) {
-        if(URLDepthPair.check(viewedLink,pair)) {
-            viewedLink.add(pair);
-            if (pair.getDepth() < maxDepth) {
-                findLink.add(pair);
+    /** Tells the pool that the fetch of a link returned by getPair is over. */
+    public void releasePair(URLDepthPair pair) {
+        synchronized (this) {
+            findLink.release(pair);
+            notifyAll();
+        }
+        CrawlCheckpoint current = checkpoint;
+        if (current != null && current.isDue(System.currentTimeMillis()))
+            saveCheckpoint(false);
+    }
+
+    /** Tells the pool that a link was fetched, and how long it took. */
+    public void completePair(URLDepthPair pair, long nanos) {
+        synchronized (this) {
+            findLink.complete(pair, nanos);
+            notifyAll();
+        }
+        CrawlCheckpoint current = checkpoint;
+        if (current != null && current.isDue(System.currentTimeMillis()))
+            saveCheckpoint(false);
+    }
+
+    /**
+     * Tells the pool that the fetch of a link failed. A retriable failure puts
+     * the link back into the frontier while it has retries left.
+     * @return whether the link will be fetched again
+     */
+    public synchronized boolean failPair(URLDepthPair pair, boolean retry) {
+        boolean again = findLink.fail(pair, retry, System.currentTimeMillis());
+        if (again) {
+            metrics.frontierAdded(pair.getDepth());
+            metrics.error("retried");
+        }
+        notifyAll();
+        return again;
+    }
+
+    /** Socket timeout in milliseconds for fetching the link. */
+    public synchronized int timeoutFor(URLDepthPair pair) {
+        return findLink.timeoutFor(pair);
+    }
+
+    public void addPair(URLDepthPair pair) {
+        checkpointLock.readLock().lock();
+        try {
+            if (!seenLink.add(pair.getFingerprint())) {
+                if (pair.getDepth() < maxDepth)
+                    synchronized (this) {
+                        frontier.link(pair.getFingerprint());
+                    }
+                return;
+            }
+            if (pair.getDepth() >= maxDepth) {
+                record(pair);
+                return;
+            }
+            LinkRouter current = router;
+            if (current != null && !current.isLocal(pair)) {
+                current.forward(pair);
+                return;
+            }
+            synchronized (this) {
+                admit(pair);
                 notify();
             }
+        } finally {
+            checkpointLock.readLock().unlock();
         }
     }
 
-    public synchronized int getWait() {
-        return cWait;
+    /**
+     * Writes a checkpoint now. Links being added wait until it is written, so
+     * every URL in the saved dedup set is also in the saved frontier or already fetched.
+     */
+    public void saveCheckpoint() {
+        saveCheckpoint(true);
     }
 
-    public LinkedList<URLDepthPair> getResult() {
-        return viewedLink;
+    private void saveCheckpoint(boolean force) {
+        checkpointLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (checkpoint == null || !force && !checkpoint.isDue(System.currentTimeMillis()))
+                    return;
+                ArrayList<URLDepthPair> waiting = new ArrayList<URLDepthPair>();
+                findLink.snapshot(waiting);
+                frontier.snapshot(waiting);
+                checkpoint.save(maxDepth, waiting, spill, seenLink);
+                if (spill != null)
+                    spill.releaseConsumed(spill.getReadSegment());
+            }
+        } catch (IOException e) {
+            System.out.println("Checkpoint failed: " + e.getMessage());
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /** Puts a new link into the priority frontier and moves what no longer fits to the spill. */
+    private void admit(URLDepthPair pair) {
+        metrics.frontierAdded(pair.getDepth());
+        frontier.add(pair, dropped);
+        for (URLDepthPair worst : dropped) {
+            metrics.frontierRemoved(worst.getDepth());
+            if (spill == null || !spill(worst))
+                metrics.evicted();
+        }
+        dropped.clear();
+    }
+
+    private boolean spill(URLDepthPair pair) {
+        try {
+            spill.append(pair);
+            metrics.spilled(1);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Spill failed, dropping link: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void prefetch(URLDepthPair pair) {
+        dnsCache.prefetch(pair.getHost());
+    }
+
+    private void refill() {
+        if (spill != null && !spill.isEmpty() && frontier.size() <= frontier.getCapacity() / 2) {
+            try {
+                URLDepthPair pair;
+                while (frontier.size() < frontier.getCapacity() && (pair = spill.poll()) != null) {
+                    metrics.spilled(-1);
+                    admit(pair);
+                }
+            } catch (IOException e) {
+                System.out.println("Cannot read spilled links: " + e.getMessage());
+            }
+        }
+        URLDepthPair pair;
+        while (findLink.size() < SCHEDULER_WINDOW && (pair = frontier.poll(findLink::isFull)) != null) {
+            findLink.add(pair);
+            prefetch(pair);
+        }
+    }
+
+    /** Reports a link that lies beyond the depth limit and will not be fetched. */
+    private void record(URLDepthPair pair) {
+        try {
+            getResultSink().accept(new CrawlRecord(pair.getURL(), pair.getDepth(), CrawlRecord.Kind.NOT_FETCHED, 0,
+                    System.currentTimeMillis(), 0, null, null));
+        } catch (IOException e) {
+            metrics.error("sink");
+        }
+    }
+
+    public synchronized int getWait() {
+        return cWait;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Remembers which URLs the crawler has already met. The exact mode keeps a
+ * fingerprint per URL; the Bloom mode keeps only the filter and may, with the
+ * configured probability, take a new URL for an old one. With both enabled the
+ * filter answers most {@link #contains} questions about new URLs without
+ * touching the table.
+ */
+public class URLSeenFilter {
+    private final FingerprintSet exact;
+    private final BloomFilter bloom;
+
+    private URLSeenFilter(FingerprintSet exact, BloomFilter bloom) {
+        this.exact = exact;
+        this.bloom = bloom;
+    }
+
+    /** Exact dedup sized for the given number of URLs. */
+    public URLSeenFilter(long expected) {
+        this(expected, 0, true);
+    }
+
+    /**
+     * @param falsePositiveRate rate of the Bloom front-end, or 0 to run without it
+     * @param keepExact whether to keep the fingerprint table behind the filter
+     */
+    public URLSeenFilter(long expected, double falsePositiveRate, boolean keepExact) {
+        if (falsePositiveRate == 0 && !keepExact)
+            throw new IllegalArgumentException("either the filter or the table is needed");
+        exact = keepExact ? new FingerprintSet(expected) : null;
+        bloom = falsePositiveRate > 0 ? new BloomFilter(expected, falsePositiveRate) : null;
+    }
+
+    /** Marks the URL as seen; returns <code>true</code> if it was not seen before. */
+    public boolean add(String url) {
+        return add(URLFingerprint.of(url));
+    }
+
+    public boolean add(long fingerprint) {
+        if (bloom == null)
+            return exact.add(fingerprint);
+        if (exact == null)
+            return bloom.put(fingerprint);
+        if (!bloom.mightContain(fingerprint))
+            bloom.put(fingerprint);
+        return exact.add(fingerprint);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeBoolean(exact != null);
+        if (exact != null)
+            exact.writeTo(out);
+        out.writeBoolean(bloom != null);
+        if (bloom != null)
+            bloom.writeTo(out);
+    }
+
+    public static URLSeenFilter readFrom(DataInputStream in) throws IOException {
+        FingerprintSet exact = in.readBoolean() ? FingerprintSet.readFrom(in) : null;
+        BloomFilter bloom = in.readBoolean() ? BloomFilter.readFrom(in) : null;
+        return new URLSeenFilter(exact, bloom);
+    }
+
+    public boolean contains(String url) {
+        long fingerprint = URLFingerprint.of(url);
+        if (bloom != null && !bloom.mightContain(fingerprint))
+            return false;
+        return exact == null || exact.contains(fingerprint);
+    }
+}
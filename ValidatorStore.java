@@ -0,0 +1,242 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of what the last crawl learned about each URL: the ETag and
+ * Last-Modified validators, the hash of the page text and its out-links. With
+ * it the next crawl sends conditional requests and, on 304 Not Modified,
+ * reuses the links instead of downloading the page again.
+ *
+ * The index is a memory-mapped open-addressing table of (URL fingerprint,
+ * record offset) slots; the records are appended to a data file, framed as
+ * length, payload and CRC32 like a RecordLogSink record. A newer record of a
+ * URL replaces the offset in its slot, the old one is left as garbage. Both
+ * files survive restarts; a record that was not fully written reads as absent.
+ * A full table is rebuilt larger in a new file that replaces the index by an
+ * atomic rename, so a crash while it grows keeps the old index.
+ * Strings in a record are DataStrings, so validators and links have no 64 KB limit.
+ */
+public class ValidatorStore implements Closeable {
+    private static final int MAGIC = 0x43525643;
+    private static final int VERSION = 2;
+    private static final int HEADER = 16;
+    private static final int SLOT = 16;
+    private static final double MAX_LOAD = 0.75;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    /** Validators and out-links of one URL. */
+    public static class Entry {
+        /** ETag header, or <code>null</code>. */
+        public final String etag;
+        /** Last-Modified header, or <code>null</code>. */
+        public final String lastModified;
+        public final long contentHash;
+        public final List<String> outLinks;
+
+        public Entry(String etag, String lastModified, long contentHash, List<String> outLinks) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.outLinks = outLinks == null ? Collections.<String>emptyList() : outLinks;
+        }
+
+        public boolean sameValidators(String etag, String lastModified) {
+            return Objects.equals(this.etag, etag) && Objects.equals(this.lastModified, lastModified);
+        }
+    }
+
+    private final File indexPath;
+    private RandomAccessFile indexFile;
+    private final RandomAccessFile dataFile;
+    private final FileChannel data;
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+
+    public ValidatorStore(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("cannot create " + dir);
+        indexPath = new File(dir, "validators.idx");
+        indexFile = new RandomAccessFile(indexPath, "rw");
+        dataFile = new RandomAccessFile(new File(dir, "validators.dat"), "rw");
+        data = dataFile.getChannel();
+        if (indexFile.length() == 0) {
+            capacity = INITIAL_CAPACITY;
+            map(indexFile);
+        } else {
+            index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexFile.length());
+            if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+                close();
+                throw new IOException(dir + " does not hold a validator store");
+            }
+            capacity = index.getInt(8);
+            size = index.getInt(12);
+        }
+    }
+
+    /** Returns what is known about the URL, or <code>null</code>. */
+    public synchronized Entry get(long fingerprint) throws IOException {
+        int slot = find(fingerprint);
+        if (index.getLong(slot) == 0)
+            return null;
+        return read(index.getLong(slot + 8));
+    }
+
+    public synchronized void put(long fingerprint, Entry entry) throws IOException {
+        if (fingerprint == 0)
+            throw new IllegalArgumentException("zero fingerprint");
+        if (size >= capacity * MAX_LOAD)
+            grow();
+        long offset = append(entry);
+        int slot = find(fingerprint);
+        if (index.getLong(slot) == 0) {
+            index.putLong(slot, fingerprint);
+            index.putInt(12, ++size);
+        }
+        index.putLong(slot + 8, offset);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Writes both files through to the disk. */
+    public synchronized void flush() throws IOException {
+        data.force(false);
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (index != null)
+            index.force();
+        indexFile.close();
+        dataFile.close();
+    }
+
+    private int find(long fingerprint) {
+        int mask = capacity - 1;
+        int i = (int) fingerprint & mask;
+        while (true) {
+            int slot = HEADER + i * SLOT;
+            long key = index.getLong(slot);
+            if (key == 0 || key == fingerprint)
+                return slot;
+            i = (i + 1) & mask;
+        }
+    }
+
+    private long append(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        DataStrings.write(out, entry.etag == null ? "" : entry.etag);
+        DataStrings.write(out, entry.lastModified == null ? "" : entry.lastModified);
+        out.writeLong(entry.contentHash);
+        out.writeInt(entry.outLinks.size());
+        for (String link : entry.outLinks)
+            DataStrings.write(out, link);
+        out.writeInt(0);
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - 8;
+        crc.reset();
+        crc.update(record.array(), 4, length);
+        record.putInt(0, length);
+        record.putInt(4 + length, (int) crc.getValue());
+        long offset = data.size();
+        while (record.hasRemaining())
+            data.write(record, offset + record.position());
+        return offset;
+    }
+
+    private Entry read(long offset) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(4);
+        if (data.read(head, offset) < 4)
+            return null;
+        int length = head.getInt(0);
+        if (length < 0 || offset + 8 + length > data.size())
+            return null;
+        ByteBuffer record = ByteBuffer.allocate(length + 4);
+        while (record.hasRemaining())
+            if (data.read(record, offset + 4 + record.position()) < 0)
+                return null;
+        crc.reset();
+        crc.update(record.array(), 0, length);
+        if (record.getInt(length) != (int) crc.getValue())
+            return null;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array(), 0, length));
+        String etag = DataStrings.read(in);
+        String lastModified = DataStrings.read(in);
+        long contentHash = in.readLong();
+        int links = in.readInt();
+        List<String> outLinks = new ArrayList<String>(links);
+        for (int i = 0; i < links; i++)
+            outLinks.add(DataStrings.read(in));
+        return new Entry(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified,
+                contentHash, outLinks);
+    }
+
+    private void map(RandomAccessFile file) throws IOException {
+        index = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, capacity);
+        index.putInt(12, size);
+    }
+
+    /**
+     * Doubles the table: the slots are put into a new index file of twice the
+     * size, which is written through and renamed over the old one. Until the
+     * rename the old index is left untouched.
+     */
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY)
+            throw new IOException("validator store is full");
+        File tmp = new File(indexPath.getPath() + ".tmp");
+        Files.deleteIfExists(tmp.toPath());
+        RandomAccessFile grown = new RandomAccessFile(tmp, "rw");
+        MappedByteBuffer old = index;
+        int oldCapacity = capacity;
+        try {
+            capacity *= 2;
+            map(grown);
+            for (int i = 0; i < oldCapacity; i++) {
+                int slot = HEADER + i * SLOT;
+                long fingerprint = old.getLong(slot);
+                if (fingerprint != 0) {
+                    int to = find(fingerprint);
+                    index.putLong(to, fingerprint);
+                    index.putLong(to + 8, old.getLong(slot + 8));
+                }
+            }
+            index.force();
+            Files.move(tmp.toPath(), indexPath.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            grown.close();
+            index = old;
+            capacity = oldCapacity;
+            throw e;
+        }
+        indexFile.close();
+        indexFile = grown;
+    }
+}
@@ -0,0 +1,107 @@
+package com.company;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Escape-time loop of the built-in fractals over a row of points, one point
+ * per SIMD lane. All lanes iterate together; a lane that escaped is masked
+ * off, so its z and count stay as they were, and the loop ends when every lane
+ * escaped or the limit is reached. The arithmetic is done in the same order
+ * as in the scalar loops, so the counts are exactly the same. The interior
+ * shortcuts of the scalar loops are done per lane too: the Mandelbrot bulb
+ * test before the loop and the check for an exactly repeated z, which retires
+ * a lane as not escaping.
+ *
+ * Only used when the jdk.incubator.vector module is present (see
+ * FractalGenerator.VECTORIZED); the class is not loaded otherwise.
+ */
+final class VectorKernel {
+    static final int MANDELBROT = 0;
+    static final int TRICORN = 1;
+    static final int BURNING_SHIP = 2;
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernel() {
+    }
+
+    /**
+     * Computes the counts of xs[from..] + iy in whole vectors and returns the
+     * index of the first point left over for the scalar loop.
+     */
+    static int iterate(int kind, int maxIterations, double[] xs, double y, int[] counts, int from, int to) {
+        return iterate(kind, maxIterations, xs, null, y, counts, from, to);
+    }
+
+    /** The same for the points xs[i] + iys[i]. */
+    static int iterate(int kind, int maxIterations, double[] xs, double[] ys, int[] counts, int from, int to) {
+        return iterate(kind, maxIterations, xs, ys, 0, counts, from, to);
+    }
+
+    private static int iterate(int kind, int maxIterations, double[] xs, double[] ys, double y, int[] counts,
+                               int from, int to) {
+        int lanes = SPECIES.length();
+        DoubleVector cy = DoubleVector.broadcast(SPECIES, y);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        DoubleVector limit = DoubleVector.broadcast(SPECIES, maxIterations);
+        double factor = kind == TRICORN ? -2 : 2;
+        double[] done = new double[lanes];
+        int i = from;
+        for (; i + lanes <= to; i += lanes) {
+            DoubleVector cx = DoubleVector.fromArray(SPECIES, xs, i);
+            if (ys != null)
+                cy = DoubleVector.fromArray(SPECIES, ys, i);
+            DoubleVector zx = zero;
+            DoubleVector zy = zero;
+            DoubleVector count = zero;
+            VectorMask<Double> active = SPECIES.maskAll(true);
+            if (kind == MANDELBROT) {
+                VectorMask<Double> inside = inMainBulbs(cx, cy);
+                count = count.blend(limit, inside);
+                active = active.andNot(inside);
+            }
+            DoubleVector savedX = zero;
+            DoubleVector savedY = zero;
+            int nextSave = 1;
+            for (int iteration = 0; iteration < maxIterations && active.anyTrue(); iteration++) {
+                DoubleVector nx = zx.mul(zx).sub(zy.mul(zy)).add(cx);
+                DoubleVector xy = zx.mul(factor).mul(zy);
+                if (kind == BURNING_SHIP)
+                    xy = xy.lanewise(VectorOperators.ABS);
+                DoubleVector ny = xy.add(cy);
+                zx = zx.blend(nx, active);
+                zy = zy.blend(ny, active);
+                count = count.add(one, active);
+                VectorMask<Double> cycle = active.and(zx.eq(savedX)).and(zy.eq(savedY));
+                if (cycle.anyTrue()) {
+                    count = count.blend(limit, cycle);
+                    active = active.andNot(cycle);
+                }
+                if (iteration + 1 == nextSave) {
+                    savedX = zx;
+                    savedY = zy;
+                    nextSave <<= 1;
+                }
+                active = active.and(zx.mul(zx).add(zy.mul(zy)).compare(VectorOperators.LT, 4));
+            }
+            count.intoArray(done, 0);
+            for (int k = 0; k < lanes; k++)
+                counts[i + k] = done[k] >= maxIterations ? -1 : (int) done[k];
+        }
+        return i;
+    }
+
+    /** Lane-wise Mandelbrot.inMainBulbs. */
+    private static VectorMask<Double> inMainBulbs(DoubleVector x, DoubleVector y) {
+        DoubleVector xq = x.sub(0.25);
+        DoubleVector yy = y.mul(y);
+        DoubleVector q = xq.mul(xq).add(yy);
+        VectorMask<Double> cardioid = q.mul(q.add(xq)).compare(VectorOperators.LT, yy.mul(0.25));
+        DoubleVector x1 = x.add(1);
+        return cardioid.or(x1.mul(x1).add(yy).compare(VectorOperators.LT, 0.0625));
+    }
+}